@@ -23,6 +23,7 @@ public class InvalidNotificationParameterException extends InvalidParameterExcep
   private String code;
 
   static String CHANNEL_NOT_FOUND = "channel-not-found";
+  static String NOTIFICATION_NOT_FOUND = "notification-not-found";
 
   InvalidNotificationParameterException(String code, String msg) {
     super(msg);
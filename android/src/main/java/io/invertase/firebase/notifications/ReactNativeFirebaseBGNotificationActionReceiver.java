@@ -19,7 +19,6 @@ package io.invertase.firebase.notifications;
 
 import android.app.RemoteInput;
 import android.content.BroadcastReceiver;
-import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Build;
@@ -27,8 +26,6 @@ import android.os.Bundle;
 
 import androidx.annotation.RequiresApi;
 
-import com.facebook.react.HeadlessJsTaskService;
-
 import io.invertase.firebase.common.ReactNativeFirebaseEventEmitter;
 import io.invertase.firebase.common.SharedUtils;
 
@@ -55,8 +52,7 @@ public class ReactNativeFirebaseBGNotificationActionReceiver extends BroadcastRe
         serviceIntent.putExtra(KEY_REMOTE_INPUT_RESULT, getRemoteInputBundle(intent));
       }
 
-      ComponentName name = context.startService(serviceIntent);
-      if (name != null) HeadlessJsTaskService.acquireWakeLockNow(context);
+      ReactNativeFirebaseBackgroundDispatcher.dispatchNotificationAction(context, serviceIntent);
     }
   }
 
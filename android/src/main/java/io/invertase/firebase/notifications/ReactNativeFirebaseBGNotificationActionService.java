@@ -18,15 +18,24 @@
 package io.invertase.firebase.notifications;
 
 import android.content.Intent;
+import android.os.Bundle;
 
 import androidx.annotation.Nullable;
 
 import com.facebook.react.HeadlessJsTaskService;
+import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.jstasks.HeadlessJsTaskConfig;
+import com.google.firebase.messaging.RemoteMessage;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
 
 import io.invertase.firebase.common.ReactNativeFirebaseJSON;
 
 import static io.invertase.firebase.notifications.ReactNativeFirebaseBGNotificationActionReceiver.isBackgroundNotificationIntent;
+import static io.invertase.firebase.notifications.ReactNativeFirebaseMessageBatcher.EXTRA_JOURNAL_IDS;
+import static io.invertase.firebase.notifications.ReactNativeFirebaseMessageBatcher.EXTRA_MESSAGES;
 
 public class ReactNativeFirebaseBGNotificationActionService extends HeadlessJsTaskService {
 
@@ -34,16 +43,73 @@ public class ReactNativeFirebaseBGNotificationActionService extends HeadlessJsTa
   private static final String TIMEOUT_JSON_KEY = "notification_android_headless_task_timeout";
   private static final String TASK_KEY = "ReactNativeFirebaseNotificationHeadlessTask";
 
+  private static final long TIMEOUT_PER_MESSAGE_DEFAULT = 5000;
+  private static final long MESSAGES_TIMEOUT_MAX = 5 * 60000;
+  private static final String TIMEOUT_PER_MESSAGE_JSON_KEY = "notification_android_headless_task_timeout_per_message";
+  private static final String MESSAGES_TASK_KEY = "ReactNativeFirebaseMessagingHeadlessTask";
+
+  // journaled messages handed to tasks of this service, any not acknowledged by JS are
+  // released for the next drain once the service is done
+  private final Set<Long> startedJournalIds = new HashSet<>();
+
+  @Override
+  public void onDestroy() {
+    long[] journalIds = new long[startedJournalIds.size()];
+    int i = 0;
+    for (long journalId : startedJournalIds) {
+      journalIds[i++] = journalId;
+    }
+    ReactNativeFirebaseMessageJournal.release(journalIds);
+
+    super.onDestroy();
+  }
+
   @Override
   protected @Nullable
   HeadlessJsTaskConfig getTaskConfig(Intent intent) {
+    ArrayList<RemoteMessage> messages = intent.getParcelableArrayListExtra(EXTRA_MESSAGES);
+    if (messages != null) {
+      long[] journalIds = intent.getLongArrayExtra(EXTRA_JOURNAL_IDS);
+      if (journalIds == null) journalIds = new long[0];
+
+      for (long journalId : journalIds) {
+        startedJournalIds.add(journalId);
+      }
+
+      return createMessagesTaskConfig(
+        ReactNativeFirebaseNotificationSerializer.remoteMessagesToWritableMap(messages, journalIds),
+        messages.size()
+      );
+    }
+
     if (!isBackgroundNotificationIntent(intent) || intent.getExtras() == null) return null;
 
+    return createNotificationActionTaskConfig(intent.getExtras());
+  }
+
+  static HeadlessJsTaskConfig createNotificationActionTaskConfig(Bundle extras) {
     return new HeadlessJsTaskConfig(
       TASK_KEY,
-      ReactNativeFirebaseNotificationSerializer.remoteNotificationToWritableMap(intent.getExtras()),
+      ReactNativeFirebaseNotificationSerializer.remoteNotificationToWritableMap(extras),
       ReactNativeFirebaseJSON.getSharedInstance().getLongValue(TIMEOUT_JSON_KEY, TIMEOUT_DEFAULT),
       true
     );
   }
+
+  /**
+   * One task for a whole batch of messages, the timeout grows with the batch so handling each
+   * message gets about the same time as a single message would.
+   */
+  static HeadlessJsTaskConfig createMessagesTaskConfig(WritableMap messagesMap, int messageCount) {
+    ReactNativeFirebaseJSON json = ReactNativeFirebaseJSON.getSharedInstance();
+    long timeout = json.getLongValue(TIMEOUT_JSON_KEY, TIMEOUT_DEFAULT) +
+      (messageCount - 1) * json.getLongValue(TIMEOUT_PER_MESSAGE_JSON_KEY, TIMEOUT_PER_MESSAGE_DEFAULT);
+
+    return new HeadlessJsTaskConfig(
+      MESSAGES_TASK_KEY,
+      messagesMap,
+      Math.min(timeout, MESSAGES_TIMEOUT_MAX),
+      true
+    );
+  }
 }
@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2019-present Madhusudan Sapkota & Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this library except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.invertase.firebase.notifications;
+
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Parcel;
+import android.os.PersistableBundle;
+import android.util.Base64;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+import com.facebook.react.HeadlessJsTaskService;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import io.invertase.firebase.common.ReactNativeFirebaseJSON;
+
+/**
+ * Hands background work to JS. The headless task service is used while the app is allowed to
+ * start services; when Android's background limits refuse the start, the work is run by a
+ * JobScheduler job instead of being lost.
+ *
+ * Messages are journaled, so their job simply delivers whatever the journal holds; one
+ * pending job covers any number of messages. Each notification action tap gets a job of its
+ * own which carries the action in its extras, so it survives the process being killed.
+ */
+class ReactNativeFirebaseBackgroundDispatcher {
+  private static final String TAG = "RNFirebaseBgDispatch";
+
+  private static final String MESSAGE_JOB_DEADLINE_JSON_KEY = "notification_android_message_job_deadline";
+  private static final long MESSAGE_JOB_DEADLINE_DEFAULT = 0;
+
+  static final int MESSAGES_JOB_ID = 0x52464e01;
+  // notification action jobs use the ids from here on, one per pending action
+  private static final int FIRST_NOTIFICATION_ACTION_JOB_ID = 0x52464e10;
+  private static final int NOTIFICATION_ACTION_JOB_IDS = 64;
+
+  private static final String JOB_EXTRA_NOTIFICATION_ACTION = "notificationAction";
+  private static volatile boolean messagesJobRunning = false;
+
+  /**
+   * Starts a headless task for a batch of journaled messages, or schedules the messages job
+   * if the service can't be started.
+   */
+  static void dispatchMessages(Context context, Intent serviceIntent, long[] journalIds) {
+    if (startService(context, serviceIntent)) return;
+
+    // the job drains them from the journal
+    ReactNativeFirebaseMessageJournal.release(journalIds);
+
+    if (Build.VERSION.SDK_INT >= 21) {
+      scheduleMessagesJob(context);
+    } else {
+      Log.e(TAG, "Failed to start the headless task, messages are delivered once the app starts");
+    }
+  }
+
+  /**
+   * While the messages job runs it owns the journal, the drain when JS initialises is skipped
+   * so its messages aren't split between the job's task and the app.
+   */
+  static boolean isMessagesJobRunning() {
+    return messagesJobRunning;
+  }
+
+  static void setMessagesJobRunning(boolean running) {
+    messagesJobRunning = running;
+  }
+
+  /**
+   * Starts a headless task for a notification action, or schedules the notification actions
+   * job if the service can't be started.
+   */
+  static void dispatchNotificationAction(Context context, Intent serviceIntent) {
+    if (startService(context, serviceIntent)) return;
+
+    if (Build.VERSION.SDK_INT >= 21 && serviceIntent.getExtras() != null) {
+      scheduleNotificationActionJob(context, serviceIntent.getExtras());
+    } else {
+      Log.e(TAG, "Failed to start the headless task, the notification action is dropped");
+    }
+  }
+
+  static boolean isNotificationActionJob(int jobId) {
+    return jobId >= FIRST_NOTIFICATION_ACTION_JOB_ID && jobId < FIRST_NOTIFICATION_ACTION_JOB_ID + NOTIFICATION_ACTION_JOB_IDS;
+  }
+
+  /**
+   * Returns the notification action a job was scheduled for, or null if it can't be read.
+   */
+  @RequiresApi(api = 21)
+  static @Nullable Bundle getNotificationAction(PersistableBundle jobExtras) {
+    String marshalled = jobExtras.getString(JOB_EXTRA_NOTIFICATION_ACTION);
+    if (marshalled == null) return null;
+
+    Parcel parcel = Parcel.obtain();
+    try {
+      byte[] bytes = Base64.decode(marshalled, Base64.NO_WRAP);
+      parcel.unmarshall(bytes, 0, bytes.length);
+      parcel.setDataPosition(0);
+      return parcel.readBundle(ReactNativeFirebaseBackgroundDispatcher.class.getClassLoader());
+    } catch (RuntimeException e) {
+      Log.e(TAG, "Failed to read notification action", e);
+      return null;
+    } finally {
+      parcel.recycle();
+    }
+  }
+
+  private static boolean startService(Context context, Intent serviceIntent) {
+    try {
+      ComponentName name = context.startService(serviceIntent);
+      if (name == null) return false;
+
+      HeadlessJsTaskService.acquireWakeLockNow(context);
+      return true;
+    } catch (IllegalStateException e) {
+      // background execution limits, e.g. a normal priority message on Android O+
+      return false;
+    }
+  }
+
+  @RequiresApi(api = 21)
+  private static void scheduleMessagesJob(Context context) {
+    JobScheduler jobScheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+    if (jobScheduler == null) return;
+
+    // a pending job delivers every journaled message, re-scheduling it would only delay it
+    if (Build.VERSION.SDK_INT >= 24 && jobScheduler.getPendingJob(MESSAGES_JOB_ID) != null) return;
+
+    long deadline = Math.max(0, ReactNativeFirebaseJSON.getSharedInstance().getLongValue(MESSAGE_JOB_DEADLINE_JSON_KEY, MESSAGE_JOB_DEADLINE_DEFAULT));
+
+    // with a deadline the job waits for a network, which handlers usually need, up to that long
+    JobInfo.Builder builder = new JobInfo.Builder(MESSAGES_JOB_ID, getJobComponent(context))
+      .setOverrideDeadline(deadline);
+    if (deadline > 0) builder.setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY);
+
+    scheduleJob(context, builder.build());
+  }
+
+  @RequiresApi(api = 21)
+  private static void scheduleNotificationActionJob(Context context, Bundle notificationAction) {
+    JobScheduler jobScheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+    if (jobScheduler == null) return;
+
+    // a persistable bundle can't hold the action's bundle as is, it is kept marshalled
+    Parcel parcel = Parcel.obtain();
+    String marshalled;
+    try {
+      parcel.writeBundle(notificationAction);
+      marshalled = Base64.encodeToString(parcel.marshall(), Base64.NO_WRAP);
+    } finally {
+      parcel.recycle();
+    }
+
+    PersistableBundle jobExtras = new PersistableBundle();
+    jobExtras.putString(JOB_EXTRA_NOTIFICATION_ACTION, marshalled);
+
+    Set<Integer> pendingJobIds = new HashSet<>();
+    for (JobInfo jobInfo : jobScheduler.getAllPendingJobs()) {
+      pendingJobIds.add(jobInfo.getId());
+    }
+
+    for (int i = 0; i < NOTIFICATION_ACTION_JOB_IDS; i++) {
+      int jobId = FIRST_NOTIFICATION_ACTION_JOB_ID + i;
+      if (pendingJobIds.contains(jobId)) continue;
+
+      scheduleJob(context, new JobInfo.Builder(jobId, getJobComponent(context))
+        .setExtras(jobExtras)
+        // the user is waiting for the action
+        .setOverrideDeadline(0)
+        .build());
+      return;
+    }
+
+    Log.e(TAG, "Too many pending notification actions, the notification action is dropped");
+  }
+
+  @RequiresApi(api = 21)
+  private static void scheduleJob(Context context, JobInfo jobInfo) {
+    JobScheduler jobScheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+    if (jobScheduler == null || jobScheduler.schedule(jobInfo) != JobScheduler.RESULT_SUCCESS) {
+      Log.e(TAG, "Failed to schedule background job " + jobInfo.getId());
+    }
+  }
+
+  private static ComponentName getJobComponent(Context context) {
+    return new ComponentName(context, ReactNativeFirebaseHeadlessJobService.class);
+  }
+}
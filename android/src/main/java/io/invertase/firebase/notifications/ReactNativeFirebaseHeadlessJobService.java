@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2019-present Madhusudan Sapkota & Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this library except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.invertase.firebase.notifications;
+
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+import android.os.Bundle;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+import com.facebook.react.ReactApplication;
+import com.facebook.react.ReactInstanceManager;
+import com.facebook.react.bridge.ReactContext;
+import com.facebook.react.jstasks.HeadlessJsTaskConfig;
+import com.facebook.react.jstasks.HeadlessJsTaskContext;
+import com.facebook.react.jstasks.HeadlessJsTaskEventListener;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Runs the headless JS tasks ReactNativeFirebaseBackgroundDispatcher couldn't start as a
+ * service. The job lasts until all of its tasks have finished, JobScheduler keeps the device
+ * awake meanwhile.
+ */
+@RequiresApi(api = 21)
+public class ReactNativeFirebaseHeadlessJobService extends JobService implements HeadlessJsTaskEventListener {
+  private final Set<Integer> activeTasks = new HashSet<>();
+  private long[] journalIds = new long[0];
+  private @Nullable JobParameters jobParameters;
+  private @Nullable ReactContext reactContext;
+
+  @Override
+  public boolean onStartJob(JobParameters params) {
+    if (!(getApplication() instanceof ReactApplication)) return false;
+    jobParameters = params;
+    if (params.getJobId() == ReactNativeFirebaseBackgroundDispatcher.MESSAGES_JOB_ID) {
+      ReactNativeFirebaseBackgroundDispatcher.setMessagesJobRunning(true);
+    }
+
+    ReactInstanceManager reactInstanceManager = ((ReactApplication) getApplication()).getReactNativeHost().getReactInstanceManager();
+    ReactContext currentReactContext = reactInstanceManager.getCurrentReactContext();
+
+    if (currentReactContext != null) {
+      startTasks(currentReactContext);
+    } else {
+      reactInstanceManager.addReactInstanceEventListener(new ReactInstanceManager.ReactInstanceEventListener() {
+        @Override
+        public void onReactContextInitialized(ReactContext context) {
+          reactInstanceManager.removeReactInstanceEventListener(this);
+          startTasks(context);
+        }
+      });
+      if (!reactInstanceManager.hasStartedCreatingInitialContext()) {
+        reactInstanceManager.createReactContextInBackground();
+      }
+    }
+
+    return true;
+  }
+
+  @Override
+  public boolean onStopJob(JobParameters params) {
+    boolean tasksStarted = reactContext != null;
+    finish();
+    // run again later: unacknowledged messages are still journaled, a notification action is
+    // only retried if its task never started so it isn't handled twice
+    return params.getJobId() == ReactNativeFirebaseBackgroundDispatcher.MESSAGES_JOB_ID || !tasksStarted;
+  }
+
+  private void startTasks(ReactContext context) {
+    if (jobParameters == null) return;
+    reactContext = context;
+
+    List<HeadlessJsTaskConfig> taskConfigs = new ArrayList<>();
+    if (jobParameters.getJobId() == ReactNativeFirebaseBackgroundDispatcher.MESSAGES_JOB_ID) {
+      List<ReactNativeFirebaseMessageJournal.Entry> entries = ReactNativeFirebaseMessageJournal.drain();
+      if (!entries.isEmpty()) {
+        journalIds = new long[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+          journalIds[i] = entries.get(i).id;
+        }
+
+        taskConfigs.add(ReactNativeFirebaseBGNotificationActionService.createMessagesTaskConfig(
+          ReactNativeFirebaseNotificationSerializer.journaledMessagesToWritableMap(entries),
+          entries.size()
+        ));
+      }
+    } else if (ReactNativeFirebaseBackgroundDispatcher.isNotificationActionJob(jobParameters.getJobId())) {
+      Bundle extras = ReactNativeFirebaseBackgroundDispatcher.getNotificationAction(jobParameters.getExtras());
+      if (extras != null) {
+        taskConfigs.add(ReactNativeFirebaseBGNotificationActionService.createNotificationActionTaskConfig(extras));
+      }
+    }
+
+    HeadlessJsTaskContext headlessJsTaskContext = HeadlessJsTaskContext.getInstance(context);
+    headlessJsTaskContext.addTaskEventListener(this);
+    for (HeadlessJsTaskConfig taskConfig : taskConfigs) {
+      activeTasks.add(headlessJsTaskContext.startTask(taskConfig));
+    }
+
+    if (activeTasks.isEmpty()) {
+      JobParameters params = jobParameters;
+      finish();
+      jobFinished(params, false);
+    }
+  }
+
+  @Override
+  public void onHeadlessJsTaskStart(int taskId) {
+  }
+
+  @Override
+  public void onHeadlessJsTaskFinish(int taskId) {
+    if (!activeTasks.remove(taskId) || !activeTasks.isEmpty() || jobParameters == null) return;
+
+    JobParameters params = jobParameters;
+    finish();
+    jobFinished(params, false);
+  }
+
+  private void finish() {
+    if (reactContext != null) {
+      HeadlessJsTaskContext.getInstance(reactContext).removeTaskEventListener(this);
+      reactContext = null;
+    }
+
+    // messages not acknowledged by JS go to the next drain
+    ReactNativeFirebaseMessageJournal.release(journalIds);
+    journalIds = new long[0];
+    activeTasks.clear();
+    if (jobParameters != null && jobParameters.getJobId() == ReactNativeFirebaseBackgroundDispatcher.MESSAGES_JOB_ID) {
+      ReactNativeFirebaseBackgroundDispatcher.setMessagesJobRunning(false);
+    }
+    jobParameters = null;
+  }
+}
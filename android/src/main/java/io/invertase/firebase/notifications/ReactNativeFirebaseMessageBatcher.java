@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2019-present Madhusudan Sapkota & Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this library except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.invertase.firebase.notifications;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.util.Log;
+
+import com.google.firebase.messaging.RemoteMessage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import io.invertase.firebase.common.ReactNativeFirebaseJSON;
+
+import static io.invertase.firebase.app.ReactNativeFirebaseApp.getApplicationContext;
+
+/**
+ * Collects background messages for a short window, or until the batch is full, and hands
+ * them to a single headless JS task. A burst of messages, e.g. after the device reconnects,
+ * then costs one JS wake-up instead of one per message.
+ *
+ * Only the newest pending message per sender set collapse key is kept, the messages it supersedes are
+ * never delivered.
+ */
+class ReactNativeFirebaseMessageBatcher {
+  private static final String TAG = "RNFirebaseMsgBatcher";
+
+  private static final String BATCH_WINDOW_JSON_KEY = "notification_android_message_batch_window";
+  private static final String BATCH_SIZE_JSON_KEY = "notification_android_message_batch_size";
+
+  private static final long BATCH_WINDOW_DEFAULT = 250;
+  private static final long BATCH_SIZE_DEFAULT = 20;
+
+  static final String EXTRA_MESSAGES = "messages";
+  static final String EXTRA_JOURNAL_IDS = "journalIds";
+
+  private static final Handler handler = new Handler(Looper.getMainLooper());
+  private static final Runnable flush = ReactNativeFirebaseMessageBatcher::flush;
+
+  private static ArrayList<RemoteMessage> pending = new ArrayList<>();
+  // same order as pending, -1 for messages which couldn't be journaled
+  private static ArrayList<Long> pendingJournalIds = new ArrayList<>();
+  private static PowerManager.WakeLock wakeLock;
+
+  /**
+   * Journals the message and adds it to the current batch, starting a new batch window if
+   * there is none.
+   */
+  static void enqueue(RemoteMessage remoteMessage) {
+    long journalId = journal(remoteMessage);
+    ReactNativeFirebaseJSON json = ReactNativeFirebaseJSON.getSharedInstance();
+    long batchWindow = Math.max(0, json.getLongValue(BATCH_WINDOW_JSON_KEY, BATCH_WINDOW_DEFAULT));
+    int batchSize = (int) Math.max(1, json.getLongValue(BATCH_SIZE_JSON_KEY, BATCH_SIZE_DEFAULT));
+
+    synchronized (ReactNativeFirebaseMessageBatcher.class) {
+      String collapseKey = ReactNativeFirebaseMessageJournal.getSenderCollapseKey(remoteMessage.getCollapseKey());
+      if (collapseKey != null) {
+        removeCollapsed(collapseKey);
+      }
+
+      pending.add(remoteMessage);
+      pendingJournalIds.add(journalId);
+
+      if (pending.size() >= batchSize) {
+        handler.removeCallbacks(flush);
+        handler.post(flush);
+      } else if (pending.size() == 1) {
+        // FCM only keeps the device awake while the message is being received
+        acquireWakeLock(batchWindow);
+        handler.postDelayed(flush, batchWindow);
+      }
+    }
+  }
+
+  private static void flush() {
+    ArrayList<RemoteMessage> messages;
+    long[] journalIds;
+
+    synchronized (ReactNativeFirebaseMessageBatcher.class) {
+      if (pending.isEmpty()) return;
+      messages = pending;
+      pending = new ArrayList<>();
+
+      journalIds = toJournalIds(pendingJournalIds);
+      pendingJournalIds = new ArrayList<>();
+    }
+
+    Context context = getApplicationContext();
+    try {
+      Intent intent = new Intent(context, ReactNativeFirebaseBGNotificationActionService.class);
+      intent.putParcelableArrayListExtra(EXTRA_MESSAGES, messages);
+      intent.putExtra(EXTRA_JOURNAL_IDS, journalIds);
+      ReactNativeFirebaseBackgroundDispatcher.dispatchMessages(context, intent, journalIds);
+    } finally {
+      releaseWakeLock();
+    }
+  }
+
+  /**
+   * Drops the pending messages superseded by a newer message with the same collapse key.
+   */
+  private static void removeCollapsed(String collapseKey) {
+    ArrayList<Long> supersededJournalIds = new ArrayList<>();
+
+    for (int i = pending.size() - 1; i >= 0; i--) {
+      if (collapseKey.equals(pending.get(i).getCollapseKey())) {
+        pending.remove(i);
+        supersededJournalIds.add(pendingJournalIds.remove(i));
+        ReactNativeFirebaseMessageJournal.onMessageCollapsed();
+      }
+    }
+
+    if (!supersededJournalIds.isEmpty()) {
+      ReactNativeFirebaseMessageJournal.acknowledge(toJournalIds(supersededJournalIds));
+    }
+  }
+
+  private static long[] toJournalIds(ArrayList<Long> journalIdList) {
+    int count = 0;
+    for (long journalId : journalIdList) {
+      if (journalId != -1) count++;
+    }
+
+    long[] journalIds = new long[count];
+    int i = 0;
+    for (long journalId : journalIdList) {
+      if (journalId != -1) journalIds[i++] = journalId;
+    }
+    return journalIds;
+  }
+
+  private static long journal(RemoteMessage remoteMessage) {
+    try {
+      return ReactNativeFirebaseMessageJournal.append(
+        remoteMessage.getCollapseKey(),
+        ReactNativeFirebaseNotificationSerializer.remoteMessageToBytes(remoteMessage)
+      );
+    } catch (IOException e) {
+      Log.e(TAG, "Failed to encode message " + remoteMessage.getMessageId(), e);
+      return -1;
+    }
+  }
+
+  private static void acquireWakeLock(long batchWindow) {
+    if (wakeLock == null) {
+      PowerManager powerManager = (PowerManager) getApplicationContext().getSystemService(Context.POWER_SERVICE);
+      wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, ReactNativeFirebaseMessageBatcher.class.getCanonicalName());
+      wakeLock.setReferenceCounted(false);
+    }
+
+    // the timeout is only a safety net, the lock is released as soon as the batch is handed over
+    wakeLock.acquire(batchWindow + 5000);
+  }
+
+  private static synchronized void releaseWakeLock() {
+    // a message may have started the next batch meanwhile, which still needs the lock
+    if (pending.isEmpty() && wakeLock != null && wakeLock.isHeld()) {
+      wakeLock.release();
+    }
+  }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2019-present Madhusudan Sapkota & Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this library except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.invertase.firebase.notifications;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.invertase.firebase.common.ReactNativeFirebaseJSON;
+
+import static io.invertase.firebase.app.ReactNativeFirebaseApp.getApplicationContext;
+
+/**
+ * Remembers the ids of the most recently received messages so messages FCM delivers more
+ * than once are dropped before they cost a service start, wake lock or bridge traffic.
+ *
+ * The ids are kept in memory and appended to a file, one per line, so they survive the
+ * process being killed. The file is rewritten with just the remembered ids once it has grown
+ * to twice their number.
+ */
+class ReactNativeFirebaseMessageDeduplicator {
+  private static final String TAG = "RNFirebaseMsgDedup";
+
+  private static final String FILE_NAME = "rnfirebase_message_ids";
+  private static final String CAPACITY_JSON_KEY = "notification_android_message_dedup_size";
+  private static final long CAPACITY_DEFAULT = 1000;
+
+  // oldest first
+  private static final LinkedHashSet<String> messageIds = new LinkedHashSet<>();
+  private static final AtomicLong duplicates = new AtomicLong();
+
+  private static boolean loaded = false;
+  private static int capacity;
+  private static int fileLines = 0;
+  private static @Nullable Writer writer;
+
+  /**
+   * Records the message id, returning false if it has been seen before. Messages without an
+   * id are never considered duplicates.
+   */
+  static synchronized boolean isFirstDelivery(@Nullable String messageId) {
+    if (messageId == null || messageId.isEmpty()) return true;
+    load();
+    if (capacity == 0) return true;
+
+    if (messageIds.contains(messageId)) {
+      duplicates.incrementAndGet();
+      return false;
+    }
+
+    messageIds.add(messageId);
+    if (messageIds.size() > capacity) {
+      Iterator<String> iterator = messageIds.iterator();
+      iterator.next();
+      iterator.remove();
+    }
+
+    if (fileLines < capacity * 2 || !rewrite()) {
+      append(messageId);
+    }
+
+    return true;
+  }
+
+  /**
+   * The number of messages dropped as duplicates.
+   */
+  static long getDuplicateCount() {
+    return duplicates.get();
+  }
+
+  private static File getFile() {
+    return new File(getApplicationContext().getFilesDir(), FILE_NAME);
+  }
+
+  private static void load() {
+    if (loaded) return;
+    loaded = true;
+    capacity = (int) Math.max(0, ReactNativeFirebaseJSON.getSharedInstance().getLongValue(CAPACITY_JSON_KEY, CAPACITY_DEFAULT));
+
+    File file = getFile();
+    if (!file.exists()) return;
+
+    BufferedReader reader = null;
+    try {
+      reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+      String line;
+      while ((line = reader.readLine()) != null) {
+        fileLines++;
+        if (line.isEmpty()) continue;
+
+        // re-adding moves the id to the end, as on the first delivery
+        messageIds.remove(line);
+        messageIds.add(line);
+      }
+    } catch (IOException e) {
+      Log.e(TAG, "Failed to read message ids", e);
+    } finally {
+      closeQuietly(reader);
+    }
+
+    Iterator<String> iterator = messageIds.iterator();
+    while (messageIds.size() > capacity && iterator.hasNext()) {
+      iterator.next();
+      iterator.remove();
+    }
+  }
+
+  private static void append(String messageId) {
+    try {
+      if (writer == null) {
+        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(getFile(), true), "UTF-8"));
+        // starts a new line in case the last one was torn by a crash, empty lines are skipped
+        writer.write('\n');
+        fileLines++;
+      }
+
+      writer.write(messageId);
+      writer.write('\n');
+      writer.flush();
+      fileLines++;
+    } catch (IOException e) {
+      Log.e(TAG, "Failed to store message id", e);
+      closeQuietly(writer);
+      writer = null;
+    }
+  }
+
+  private static boolean rewrite() {
+    closeQuietly(writer);
+    writer = null;
+
+    File file = getFile();
+    File tempFile = new File(file.getPath() + ".tmp");
+    Writer tempWriter = null;
+    try {
+      tempWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), "UTF-8"));
+      for (String messageId : messageIds) {
+        tempWriter.write(messageId);
+        tempWriter.write('\n');
+      }
+      tempWriter.close();
+      tempWriter = null;
+
+      if (!tempFile.renameTo(file)) throw new IOException("Failed to replace message ids");
+      fileLines = messageIds.size();
+      return true;
+    } catch (IOException e) {
+      Log.e(TAG, "Failed to rewrite message ids", e);
+      closeQuietly(tempWriter);
+      //noinspection ResultOfMethodCallIgnored
+      tempFile.delete();
+      return false;
+    }
+  }
+
+  private static void closeQuietly(@Nullable Closeable closeable) {
+    if (closeable == null) return;
+    try {
+      closeable.close();
+    } catch (IOException ignore) {
+    }
+  }
+}
@@ -0,0 +1,440 @@
+/*
+ * Copyright (c) 2019-present Madhusudan Sapkota & Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this library except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.invertase.firebase.notifications;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import static io.invertase.firebase.app.ReactNativeFirebaseApp.getApplicationContext;
+
+/**
+ * An append-only journal of the background messages which JS hasn't handled yet, so messages
+ * survive the process being killed before or while JS handles them.
+ *
+ * Every received message is appended as a record, and an acknowledgement record is appended
+ * once JS has handled it. Each record carries a checksum; a torn record at the end of the
+ * file, e.g. from a crash mid-write, is dropped when the journal is loaded. Once enough
+ * messages have been acknowledged the journal is compacted into a new file holding just the
+ * unacknowledged messages, which then replaces the old one.
+ *
+ * Messages handed to a headless task are in flight and aren't returned by drain() until
+ * they're released again, so they aren't delivered twice within one process.
+ *
+ * A message with a collapse key set by its sender supersedes the pending messages with the
+ * same key which aren't in flight, they're acknowledged without ever being delivered.
+ */
+class ReactNativeFirebaseMessageJournal {
+  private static final String TAG = "RNFirebaseMsgJournal";
+
+  private static final String FILE_NAME = "rnfirebase_message_journal";
+  private static final String COMPACT_FILE_NAME = "rnfirebase_message_journal.compact";
+
+  private static final byte RECORD_MESSAGE = 1;
+  private static final byte RECORD_ACK = 2;
+
+  // type, id, payload length & checksum
+  private static final int RECORD_OVERHEAD = 1 + 8 + 4 + 4;
+  private static final int MAX_PAYLOAD_LENGTH = 64 * 1024;
+
+  // a backlog beyond this is never going to be handled, the oldest messages are dropped
+  private static final int MAX_MESSAGES = 500;
+  private static final int COMPACT_THRESHOLD = 64;
+
+  // the collapse key FCM reports for messages sent with delay_while_idle and no key of their own
+  private static final String DO_NOT_COLLAPSE = "do_not_collapse";
+
+  // unacknowledged messages by id, oldest first
+  private static final LinkedHashMap<Long, Entry> messages = new LinkedHashMap<>();
+  private static final Set<Long> inFlight = new HashSet<>();
+  private static final AtomicLong collapsedMessages = new AtomicLong();
+
+  private static boolean loaded = false;
+  private static long nextId = 1;
+  private static int deadRecords = 0;
+  private static @Nullable DataOutputStream output;
+  private static @Nullable FileOutputStream fileOutput;
+
+  /**
+   * Appends a message, returning its id or -1 if it couldn't be written. The message is in
+   * flight until it is released or acknowledged.
+   */
+  static synchronized long append(@Nullable String collapseKey, byte[] payload) {
+    load();
+    collapseKey = getSenderCollapseKey(collapseKey);
+
+    Entry entry = new Entry(nextId, collapseKey, payload);
+    try {
+      byte[] record = entry.toRecordPayload();
+      if (record.length > MAX_PAYLOAD_LENGTH) return -1;
+
+      writeRecord(RECORD_MESSAGE, entry.id, record);
+      // the message must still be there if the process dies right after
+      getFileOutput().getFD().sync();
+    } catch (IOException e) {
+      Log.e(TAG, "Failed to journal message", e);
+      closeOutput();
+      return -1;
+    }
+
+    nextId++;
+    if (collapseKey != null) supersede(collapseKey);
+    messages.put(entry.id, entry);
+    inFlight.add(entry.id);
+
+    while (messages.size() > MAX_MESSAGES) {
+      long dropped = messages.keySet().iterator().next();
+      Log.w(TAG, "Message journal is full, dropping message " + dropped);
+      remove(dropped);
+    }
+
+    flushOutput();
+
+    return entry.id;
+  }
+
+  /**
+   * Records that JS has handled the messages, they're compacted away later.
+   */
+  static synchronized void acknowledge(long[] ids) {
+    load();
+
+    for (long id : ids) {
+      remove(id);
+    }
+
+    flushOutput();
+
+    if (deadRecords >= COMPACT_THRESHOLD && deadRecords >= messages.size()) {
+      compact();
+    }
+  }
+
+  /**
+   * Acknowledges the pending messages with the given collapse key which aren't in flight.
+   */
+  private static void supersede(String collapseKey) {
+    List<Long> superseded = new ArrayList<>();
+    for (Entry entry : messages.values()) {
+      if (collapseKey.equals(entry.collapseKey) && !inFlight.contains(entry.id)) {
+        superseded.add(entry.id);
+      }
+    }
+
+    for (Long id : superseded) {
+      remove(id);
+      collapsedMessages.incrementAndGet();
+    }
+  }
+
+  private static void remove(long id) {
+    if (messages.remove(id) == null) return;
+    inFlight.remove(id);
+    deadRecords++;
+
+    try {
+      writeRecord(RECORD_ACK, id, new byte[0]);
+    } catch (IOException e) {
+      // the message comes back once the journal is reloaded, which is better than losing it
+      Log.e(TAG, "Failed to journal acknowledgement", e);
+      closeOutput();
+    }
+  }
+
+  /**
+   * The number of journaled messages superseded by a newer message with the same collapse key.
+   */
+  static long getCollapsedCount() {
+    return collapsedMessages.get();
+  }
+
+  /**
+   * Counts a message superseded before it was journaled, see getCollapsedCount.
+   */
+  static void onMessageCollapsed() {
+    collapsedMessages.incrementAndGet();
+  }
+
+  /**
+   * Makes in flight messages available to drain() again, e.g. when their task failed to start
+   * or ended without acknowledging them.
+   */
+  static synchronized void release(long[] ids) {
+    for (long id : ids) {
+      inFlight.remove(id);
+    }
+  }
+
+  /**
+   * Returns the collapse key if the sender set it, otherwise null. FCM reports a collapse key
+   * for every message, the app's package name unless the sender chose one, and messages
+   * without a key of their own must never collapse.
+   */
+  static @Nullable String getSenderCollapseKey(@Nullable String collapseKey) {
+    if (collapseKey == null || collapseKey.isEmpty() || DO_NOT_COLLAPSE.equals(collapseKey)) return null;
+    if (collapseKey.equals(getApplicationContext().getPackageName())) return null;
+    return collapseKey;
+  }
+
+  /**
+   * Returns the unacknowledged messages which aren't in flight, oldest first, and marks them
+   * as in flight.
+   */
+  static synchronized List<Entry> drain() {
+    load();
+
+    // messages journaled by earlier processes weren't collapsed while they were in flight
+    Map<String, Long> newest = new HashMap<>();
+    for (Entry entry : messages.values()) {
+      String collapseKey = getSenderCollapseKey(entry.collapseKey);
+      if (collapseKey != null && !inFlight.contains(entry.id)) newest.put(collapseKey, entry.id);
+    }
+
+    List<Long> superseded = new ArrayList<>();
+    List<Entry> entries = new ArrayList<>();
+    for (Entry entry : messages.values()) {
+      if (inFlight.contains(entry.id)) continue;
+
+      String collapseKey = getSenderCollapseKey(entry.collapseKey);
+      if (collapseKey != null && newest.get(collapseKey) != entry.id) {
+        superseded.add(entry.id);
+      } else {
+        inFlight.add(entry.id);
+        entries.add(entry);
+      }
+    }
+
+    for (Long id : superseded) {
+      remove(id);
+      collapsedMessages.incrementAndGet();
+    }
+
+    flushOutput();
+    return entries;
+  }
+
+  private static File getFile(String name) {
+    return new File(getApplicationContext().getFilesDir(), name);
+  }
+
+  private static void load() {
+    if (loaded) return;
+    loaded = true;
+
+    File file = getFile(FILE_NAME);
+    if (!file.exists()) return;
+
+    long validLength = 0;
+    int records = 0;
+    boolean readFailed = false;
+    DataInputStream input = null;
+    try {
+      input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      while (true) {
+        byte type = input.readByte();
+        long id = input.readLong();
+        int length = input.readInt();
+        if (length < 0 || length > MAX_PAYLOAD_LENGTH) break;
+
+        byte[] payload = new byte[length];
+        input.readFully(payload);
+        if (input.readInt() != checksum(type, id, payload)) break;
+
+        if (type == RECORD_MESSAGE) {
+          try {
+            messages.put(id, Entry.fromRecordPayload(id, payload));
+          } catch (IOException e) {
+            // the record itself is intact, only this message is lost, not the ones after it
+            Log.e(TAG, "Skipping undecodable message " + id, e);
+          }
+        } else if (type == RECORD_ACK) {
+          messages.remove(id);
+        }
+
+        nextId = Math.max(nextId, id + 1);
+        validLength += RECORD_OVERHEAD + length;
+        records++;
+      }
+    } catch (EOFException e) {
+      // end of the journal, or a record torn by a crash
+    } catch (IOException e) {
+      Log.e(TAG, "Failed to read message journal", e);
+      readFailed = true;
+    } finally {
+      closeQuietly(input);
+    }
+
+    // cut off a torn or corrupt tail so new records aren't appended after it, a failed read
+    // says nothing about what follows and leaves the file as is
+    if (!readFailed && validLength < file.length()) {
+      RandomAccessFile randomAccessFile = null;
+      try {
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.setLength(validLength);
+      } catch (IOException e) {
+        Log.e(TAG, "Failed to truncate message journal", e);
+      } finally {
+        closeQuietly(randomAccessFile);
+      }
+    }
+
+    deadRecords = records - messages.size();
+    if (deadRecords >= COMPACT_THRESHOLD) compact();
+  }
+
+  /**
+   * Writes the unacknowledged messages to a new file and swaps it in, the rename is atomic so
+   * a crash leaves either the old or the new journal.
+   */
+  private static void compact() {
+    closeOutput();
+
+    File compactFile = getFile(COMPACT_FILE_NAME);
+    DataOutputStream compactOutput = null;
+    try {
+      FileOutputStream compactFileOutput = new FileOutputStream(compactFile);
+      compactOutput = new DataOutputStream(new BufferedOutputStream(compactFileOutput));
+      for (Entry entry : messages.values()) {
+        writeRecord(compactOutput, RECORD_MESSAGE, entry.id, entry.toRecordPayload());
+      }
+      compactOutput.flush();
+      compactFileOutput.getFD().sync();
+      compactOutput.close();
+      compactOutput = null;
+
+      if (!compactFile.renameTo(getFile(FILE_NAME))) {
+        throw new IOException("Failed to replace message journal");
+      }
+
+      deadRecords = 0;
+    } catch (IOException e) {
+      Log.e(TAG, "Failed to compact message journal", e);
+      closeQuietly(compactOutput);
+      //noinspection ResultOfMethodCallIgnored
+      compactFile.delete();
+    }
+  }
+
+  private static FileOutputStream getFileOutput() throws IOException {
+    if (output == null) {
+      fileOutput = new FileOutputStream(getFile(FILE_NAME), true);
+      output = new DataOutputStream(new BufferedOutputStream(fileOutput));
+    }
+
+    return fileOutput;
+  }
+
+  private static void writeRecord(byte type, long id, byte[] payload) throws IOException {
+    getFileOutput();
+    writeRecord(output, type, id, payload);
+    if (type == RECORD_MESSAGE) output.flush();
+  }
+
+  private static void writeRecord(DataOutputStream stream, byte type, long id, byte[] payload) throws IOException {
+    stream.writeByte(type);
+    stream.writeLong(id);
+    stream.writeInt(payload.length);
+    stream.write(payload);
+    stream.writeInt(checksum(type, id, payload));
+  }
+
+  private static int checksum(byte type, long id, byte[] payload) {
+    CRC32 crc = new CRC32();
+    crc.update(type);
+    for (int shift = 56; shift >= 0; shift -= 8) {
+      crc.update((int) (id >>> shift));
+    }
+    crc.update(payload);
+    return (int) crc.getValue();
+  }
+
+  private static void flushOutput() {
+    try {
+      if (output != null) output.flush();
+    } catch (IOException e) {
+      closeOutput();
+    }
+  }
+
+  private static void closeOutput() {
+    closeQuietly(output);
+    output = null;
+    fileOutput = null;
+  }
+
+  private static void closeQuietly(@Nullable Closeable closeable) {
+    if (closeable == null) return;
+    try {
+      closeable.close();
+    } catch (IOException ignore) {
+    }
+  }
+
+  static class Entry {
+    final long id;
+    final @Nullable String collapseKey;
+    final byte[] payload;
+
+    Entry(long id, @Nullable String collapseKey, byte[] payload) {
+      this.id = id;
+      this.collapseKey = collapseKey;
+      this.payload = payload;
+    }
+
+    byte[] toRecordPayload() throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(payload.length + 32);
+      DataOutputStream stream = new DataOutputStream(bytes);
+      stream.writeBoolean(collapseKey != null);
+      if (collapseKey != null) stream.writeUTF(collapseKey);
+      stream.write(payload);
+      stream.flush();
+      return bytes.toByteArray();
+    }
+
+    static Entry fromRecordPayload(long id, byte[] recordPayload) throws IOException {
+      DataInputStream stream = new DataInputStream(new ByteArrayInputStream(recordPayload));
+      String collapseKey = stream.readBoolean() ? stream.readUTF() : null;
+      byte[] payload = new byte[stream.available()];
+      stream.readFully(payload);
+      return new Entry(id, collapseKey, payload);
+    }
+  }
+}
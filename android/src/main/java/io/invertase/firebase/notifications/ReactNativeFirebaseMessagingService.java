@@ -17,22 +17,35 @@
 
 package io.invertase.firebase.notifications;
 
-import android.content.ComponentName;
-import android.content.Intent;
-import android.util.Log;
-
 import androidx.annotation.NonNull;
+import androidx.core.util.Pair;
 
-import com.facebook.react.HeadlessJsTaskService;
+import com.facebook.react.ReactApplication;
+import com.facebook.react.ReactNativeHost;
 import com.google.firebase.messaging.FirebaseMessagingService;
 import com.google.firebase.messaging.RemoteMessage;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
 import io.invertase.firebase.common.ReactNativeFirebaseEventEmitter;
+import io.invertase.firebase.common.ReactNativeFirebaseJSON;
 import io.invertase.firebase.common.SharedUtils;
 
+import static io.invertase.firebase.notifications.ReactNativeFirebaseNotificationBitmapDecoder.TARGET_BIG_PICTURE;
+import static io.invertase.firebase.notifications.ReactNativeFirebaseNotificationBitmapDecoder.TARGET_LARGE_ICON;
+
 public class ReactNativeFirebaseMessagingService extends FirebaseMessagingService {
   private static final String TAG = "RNFirebaseMsgService";
 
+  private static final String PREFETCH_IMAGES_JSON_KEY = "notification_android_prefetch_images";
+  private static final String PREFETCH_LARGE_ICON_KEYS_JSON_KEY = "notification_android_prefetch_large_icon_keys";
+  private static final String PREFETCH_PICTURE_KEYS_JSON_KEY = "notification_android_prefetch_picture_keys";
+
+  private static final String PREFETCH_LARGE_ICON_KEYS_DEFAULT = "largeIcon";
+  private static final String PREFETCH_PICTURE_KEYS_DEFAULT = "picture";
+
   @Override
   public void onNewToken(@NonNull String token) {
     ReactNativeFirebaseEventEmitter emitter = ReactNativeFirebaseEventEmitter.getSharedInstance();
@@ -41,8 +54,13 @@ public class ReactNativeFirebaseMessagingService extends FirebaseMessagingServic
 
   @Override
   public void onMessageReceived(@NonNull RemoteMessage remoteMessage) {
+    // redelivered by FCM, or received through more than one sender
+    if (!ReactNativeFirebaseMessageDeduplicator.isFirstDelivery(remoteMessage.getMessageId())) return;
+
     ReactNativeFirebaseEventEmitter emitter = ReactNativeFirebaseEventEmitter.getSharedInstance();
 
+    prefetchImages(remoteMessage);
+
     // ----------------------
     //  NOTIFICATION Message
     // --------------------\/
@@ -52,23 +70,67 @@ public class ReactNativeFirebaseMessagingService extends FirebaseMessagingServic
       return;
     }
 
+    // ----------------------
+    //  DATA Message
+    // --------------------\/
+    //
+    // delivered straight to a running JS context, the headless task is only needed without one
+    if (SharedUtils.isAppInForeground(this) && hasReactContext()) {
+      emitter.sendEvent(ReactNativeFirebaseNotificationSerializer.remoteMessageToEvent(remoteMessage));
+      return;
+    }
+
 
     //  |-> ---------------------
     //    App in Background/Quit
     //   ------------------------
-    try {
-      Intent intent = new Intent(getApplicationContext(), ReactNativeFirebaseBGNotificationActionService.class);
-      intent.putExtra("notification", remoteMessage);
-      ComponentName name = getApplicationContext().startService(intent);
-      if (name != null) {
-        HeadlessJsTaskService.acquireWakeLockNow(getApplicationContext());
-      }
-    } catch (IllegalStateException ex) {
-      Log.e(
-        TAG,
-        "Background messages only work if the message priority is set to 'high'",
-        ex
-      );
+    ReactNativeFirebaseMessageBatcher.enqueue(remoteMessage);
+  }
+
+  /**
+   * Whether the app's React instance is already running, so events reach JS without starting it.
+   */
+  private boolean hasReactContext() {
+    if (!(getApplication() instanceof ReactApplication)) return false;
+
+    ReactNativeHost reactNativeHost = ((ReactApplication) getApplication()).getReactNativeHost();
+    return reactNativeHost.hasInstance() &&
+      reactNativeHost.getReactInstanceManager().getCurrentReactContext() != null;
+  }
+
+  /**
+   * Starts loading images referenced by the message data into the bitmap cache while JS
+   * boots, so they are usually ready once JS calls displayNotification.
+   */
+  private void prefetchImages(RemoteMessage remoteMessage) {
+    ReactNativeFirebaseJSON json = ReactNativeFirebaseJSON.getSharedInstance();
+    Map<String, String> data = remoteMessage.getData();
+    if (data.isEmpty() || !json.getBooleanValue(PREFETCH_IMAGES_JSON_KEY, true)) return;
+
+    // keyed by image and size, the same image may be both the large icon and the picture
+    Map<String, Pair<String, Integer>> images = new HashMap<>();
+    for (String key : json.getStringValue(PREFETCH_LARGE_ICON_KEYS_JSON_KEY, PREFETCH_LARGE_ICON_KEYS_DEFAULT).split(",")) {
+      addImage(images, data.get(key.trim()), TARGET_LARGE_ICON);
+    }
+
+    for (String key : json.getStringValue(PREFETCH_PICTURE_KEYS_JSON_KEY, PREFETCH_PICTURE_KEYS_DEFAULT).split(",")) {
+      addImage(images, data.get(key.trim()), TARGET_BIG_PICTURE);
+    }
+
+    if (images.isEmpty()) return;
+
+    // loads are shared by image and size, displayNotification joins these if still in flight
+    long maxBytes = ReactNativeFirebaseNotificationBitmapDecoder.getMaxBytesPerNotification() / images.size();
+    for (Pair<String, Integer> image : images.values()) {
+      String source = Objects.requireNonNull(image.first);
+      int target = Objects.requireNonNull(image.second);
+      ReactNativeFirebaseNotificationImageFetcher.fetch(source, target, maxBytes);
+    }
+  }
+
+  private static void addImage(Map<String, Pair<String, Integer>> images, String image, int target) {
+    if (image != null && !image.isEmpty()) {
+      images.put(ReactNativeFirebaseNotification.getImageKey(image, target), new Pair<>(image, target));
     }
   }
 }
@@ -18,261 +18,411 @@
 package io.invertase.firebase.notifications;
 
 import android.app.Notification;
-import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.Color;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.SystemClock;
+import android.service.notification.StatusBarNotification;
 import android.util.Log;
+import android.util.LruCache;
 
+import androidx.annotation.Nullable;
 import androidx.core.app.NotificationCompat;
-import androidx.core.app.NotificationManagerCompat;
+import androidx.core.util.Pair;
 
 import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.bridge.WritableMap;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
 
-import java.io.IOException;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 import io.invertase.firebase.common.ReactNativeFirebaseEventEmitter;
 import io.invertase.firebase.common.SharedUtils;
 
 import static io.invertase.firebase.app.ReactNativeFirebaseApp.getApplicationContext;
+import static io.invertase.firebase.notifications.ReactNativeFirebaseNotificationBitmapDecoder.TARGET_BIG_PICTURE;
+import static io.invertase.firebase.notifications.ReactNativeFirebaseNotificationBitmapDecoder.TARGET_LARGE_ICON;
 import static io.invertase.firebase.notifications.ReactNativeFirebaseNotificationSerializer.createBroadcastIntent;
 import static io.invertase.firebase.notifications.ReactNativeFirebaseNotificationSerializer.createIntent;
 import static io.invertase.firebase.notifications.ReactNativeFirebaseNotificationUtils.getLaunchActivityClass;
-import static io.invertase.firebase.notifications.ReactNativeFirebaseNotificationUtils.getResIdByName;
 import static io.invertase.firebase.notifications.ReactNativeFirebaseNotificationUtils.getSoundUri;
 
 public class ReactNativeFirebaseNotification {
   private static final String TAG = "RNFNotification";
-  private Bundle notificationBundle;
-  private Bundle androidOptionsBundle;
 
-  private ReactNativeFirebaseNotification(Bundle notificationBundle) {
-    this.notificationBundle = notificationBundle;
-    this.androidOptionsBundle = notificationBundle.getBundle("android");
+  // recently displayed notifications, kept so they can be updated without a full rebuild
+  private static final int MAX_RETAINED_NOTIFICATIONS = 16;
+  private static final LruCache<String, ReactNativeFirebaseNotification> retainedNotifications = new LruCache<>(MAX_RETAINED_NOTIFICATIONS);
+
+  private final ReactNativeFirebaseNotificationSpec spec;
+  private Map<String, Task<Bitmap>> imageTasks = new HashMap<>();
+  private boolean imagesRequested = false;
+  private CompiledParts compiledParts;
+
+  private NotificationCompat.Builder retainedBuilder;
+  private boolean progressUpdated = false;
+  private int progressCurrent;
+  private int progressMax;
+  private boolean progressIndeterminate;
+
+  private ReactNativeFirebaseNotification(ReactNativeFirebaseNotificationSpec spec) {
+    this.spec = spec;
+  }
+
+  /**
+   * Resolves and validates everything that only depends on the static options of this
+   * notification, so it can be used as a template for {@link #fromTemplate(ReadableMap)}.
+   */
+  ReactNativeFirebaseNotification compileTemplate() {
+    CompiledParts parts = getCompiledParts();
+
+    if (Build.VERSION.SDK_INT >= 26 && !ReactNativeFirebaseNotificationChannel.channelExists(parts.channelId)) {
+      throw new InvalidNotificationParameterException(
+        InvalidNotificationParameterException.CHANNEL_NOT_FOUND,
+        String.format("Notification channel does not exist for the specified id '%s'.", parts.channelId)
+      );
+    }
+
+    return this;
+  }
+
+  /**
+   * Creates a notification from this template, replacing only its variable content:
+   * notificationId, title, subtitle, body and data. The parsed spec and compiled static
+   * parts are shared.
+   */
+  ReactNativeFirebaseNotification fromTemplate(ReadableMap content) {
+    ReactNativeFirebaseNotification notification = new ReactNativeFirebaseNotification(spec.withContent(content));
+    notification.compiledParts = getCompiledParts();
+    return notification;
   }
 
   static ReactNativeFirebaseNotification fromBundle(Bundle bundle) {
-    return new ReactNativeFirebaseNotification(bundle);
+    return new ReactNativeFirebaseNotification(ReactNativeFirebaseNotificationSpec.fromBundle(bundle));
   }
 
   static ReactNativeFirebaseNotification fromReadableMap(ReadableMap readableMap) {
-    return new ReactNativeFirebaseNotification(Arguments.toBundle(readableMap));
+    return new ReactNativeFirebaseNotification(ReactNativeFirebaseNotificationSpec.fromReadableMap(readableMap));
+  }
+
+  /**
+   * Returns a notification that was recently displayed, or null if it is no longer retained.
+   */
+  static @Nullable
+  ReactNativeFirebaseNotification getDisplayed(String notificationId) {
+    return retainedNotifications.get(notificationId);
+  }
+
+  /**
+   * Removes a displayed notification, along with any update of it still waiting to be posted.
+   */
+  static void cancel(String notificationId) {
+    int id = notificationId.hashCode();
+    ReactNativeFirebaseNotification notification = retainedNotifications.remove(notificationId);
+
+    for (String tag : getTags(notification, id)) {
+      ReactNativeFirebaseNotificationUpdateScheduler.cancel(tag, id);
+      ReactNativeFirebaseNotificationGroupSummaries.onNotificationCancelled(tag, id);
+    }
+  }
+
+  /**
+   * The tags a notification may be displayed with. Once it is no longer retained, e.g. after
+   * a restart, the tags of the active notifications with its id are used on API 23+.
+   */
+  private static List<String> getTags(@Nullable ReactNativeFirebaseNotification notification, int id) {
+    List<String> tags = new ArrayList<>();
+    if (notification != null) {
+      tags.add(notification.spec.android.tag);
+      return tags;
+    }
+
+    tags.add(null);
+    if (Build.VERSION.SDK_INT >= 23) {
+      NotificationManager notificationManager = (NotificationManager) getApplicationContext().getSystemService(Context.NOTIFICATION_SERVICE);
+      for (StatusBarNotification statusBarNotification : notificationManager.getActiveNotifications()) {
+        if (statusBarNotification.getId() == id && statusBarNotification.getTag() != null && !tags.contains(statusBarNotification.getTag())) {
+          tags.add(statusBarNotification.getTag());
+        }
+      }
+    }
+
+    return tags;
+  }
+
+  /**
+   * Removes all displayed notifications, along with any updates still waiting to be posted.
+   */
+  static void cancelAll() {
+    retainedNotifications.evictAll();
+    ReactNativeFirebaseNotificationUpdateScheduler.cancelAll();
+    ReactNativeFirebaseNotificationGroupSummaries.onAllNotificationsCancelled();
+  }
+
+  /**
+   * Re-posts the notification with a new progress bar state by changing only the progress of
+   * the builder it was displayed with: images, actions and intents are reused as they are.
+   */
+  synchronized void updateProgress(int current, int max, boolean indeterminate) {
+    if (retainedBuilder == null) retainedBuilder = getNotificationBuilder();
+
+    progressUpdated = true;
+    progressCurrent = current;
+    progressMax = max;
+    progressIndeterminate = indeterminate;
+
+    Notification notification = retainedBuilder
+      .setProgress(max, current, indeterminate)
+      .setOnlyAlertOnce(true)
+      .build();
+
+    ReactNativeFirebaseNotificationUpdateScheduler.post(
+      spec.android.tag,
+      spec.notificationId.hashCode(),
+      notification,
+      !indeterminate && current >= max
+    );
+  }
+
+  /**
+   * Creates the notification resulting from applying a partial notification to this one.
+   * Images which are already loaded, and the compiled channel, sound and actions unless the
+   * patch changes them, are reused. The intents are rebuilt if the patch changes any android
+   * option, as they carry those options.
+   */
+  synchronized ReactNativeFirebaseNotification patch(ReadableMap partial) {
+    ReactNativeFirebaseNotificationSpec base = progressUpdated ?
+      spec.withProgress(progressCurrent, progressMax, progressIndeterminate) :
+      spec;
+
+    ReactNativeFirebaseNotification notification = new ReactNativeFirebaseNotification(base.withPatch(partial));
+    notification.imageTasks.putAll(imageTasks);
+
+    ReadableMap partialAndroid = partial.hasKey("android") ? partial.getMap("android") : null;
+    boolean recompile = partial.hasKey("sound") ||
+      (partialAndroid != null && (partialAndroid.hasKey("channelId") || partialAndroid.hasKey("actions")));
+
+    if (!recompile && compiledParts != null) {
+      notification.compiledParts = partialAndroid == null ? compiledParts : compiledParts.withoutIntents();
+    }
+    return notification;
+  }
+
+  ReactNativeFirebaseNotificationSpec getSpec() {
+    return spec;
+  }
+
+  String getNotificationId() {
+    return spec.notificationId;
   }
 
   WritableMap toWritableMap() {
-    return Arguments.fromBundle(notificationBundle);
+    return Arguments.fromBundle(spec.toBundle());
   }
 
   private NotificationManager getNotificationManager() {
     return (NotificationManager) getApplicationContext().getSystemService(Context.NOTIFICATION_SERVICE);
   }
 
-  private NotificationManagerCompat getNotificationManagerCompat() {
-    return NotificationManagerCompat.from(getApplicationContext());
-  }
+  /**
+   * Resolves the parts of the notification that are costly to build and don't depend on its
+   * content: channel, sound, actions and PendingIntents.
+   */
+  private CompiledParts getCompiledParts() {
+    if (compiledParts != null && compiledParts.contentIntent != null) return compiledParts;
 
-  private Notification getNotification() {
-    String channelId = Objects.requireNonNull(androidOptionsBundle.getString("channelId"));
-    if (channelId.isEmpty()) channelId = ReactNativeFirebaseNotificationChannel.createDefaultChannel();
+    ReactNativeFirebaseNotificationSpec.Android android = spec.android;
+    CompiledParts parts = compiledParts;
 
-    NotificationCompat.Builder notificationBuilder = new NotificationCompat.Builder(getApplicationContext(), channelId);
+    if (parts == null) {
+      parts = new CompiledParts();
+      parts.channelId = android.channelId;
+      if (parts.channelId.isEmpty()) parts.channelId = ReactNativeFirebaseNotificationChannel.createDefaultChannel();
 
-    if (notificationBundle.containsKey("title")) {
-      notificationBuilder.setContentTitle(notificationBundle.getString("title"));
+      if (spec.sound != null) {
+        parts.sound = getSoundUri(spec.sound);
+      }
     }
 
-    if (notificationBundle.containsKey("subtitle")) {
-      notificationBuilder.setSubText(notificationBundle.getString("subtitle"));
-    }
+    // the intents carry the android options, serialized once for all of them
+    Bundle androidOptionsBundle = android.toBundle();
 
-    if (notificationBundle.containsKey("body")) {
-      notificationBuilder.setContentText(notificationBundle.getString("body"));
+    if (!android.actions.isEmpty()) {
+      Class launchActivityClass = getLaunchActivityClass(getApplicationContext());
+
+      for (ReactNativeFirebaseNotificationSpec.Action action : android.actions) {
+        parts.actions.add(buildNotificationAction(getApplicationContext(), action, launchActivityClass, androidOptionsBundle));
+      }
     }
 
-    if (notificationBundle.containsKey("data")) {
-      notificationBuilder.setExtras(notificationBundle.getBundle("data"));
+    parts.contentIntent = createBroadcastIntent(getApplicationContext(), androidOptionsBundle, "clicked");
+
+    compiledParts = parts;
+    return parts;
+  }
+
+  private NotificationCompat.Builder getNotificationBuilder() {
+    CompiledParts parts = getCompiledParts();
+    ReactNativeFirebaseNotificationSpec.Android android = spec.android;
+    String channelId = parts.channelId;
+
+    if (Build.VERSION.SDK_INT >= 26 && !ReactNativeFirebaseNotificationChannel.channelExists(channelId)) {
+      throw new InvalidNotificationParameterException(
+        InvalidNotificationParameterException.CHANNEL_NOT_FOUND,
+        String.format("Notification channel does not exist for the specified id '%s'.", channelId)
+      );
     }
 
-    if (notificationBundle.containsKey("sound")) {
-      Uri sound = getSoundUri(Objects.requireNonNull(notificationBundle.getString("sound")));
-      notificationBuilder.setSound(sound);
+    NotificationCompat.Builder notificationBuilder = new NotificationCompat.Builder(getApplicationContext(), channelId);
+
+    if (spec.title != null) {
+      notificationBuilder.setContentTitle(spec.title);
     }
 
-    if (androidOptionsBundle.containsKey("actions")) {
-      ArrayList<Bundle> actions = androidOptionsBundle.getParcelableArrayList("actions");
+    if (spec.subtitle != null) {
+      notificationBuilder.setSubText(spec.subtitle);
+    }
 
-      for (Bundle a : Objects.requireNonNull(actions)) {
-        NotificationCompat.Action action = buildNotificationAction(getApplicationContext(), a, getLaunchActivityClass(getApplicationContext()), androidOptionsBundle);
-        notificationBuilder.addAction(action);
-      }
+    if (spec.body != null) {
+      notificationBuilder.setContentText(spec.body);
     }
 
-    if (androidOptionsBundle.containsKey("autoCancel")) {
-      notificationBuilder.setAutoCancel(androidOptionsBundle.getBoolean("autoCancel"));
+    if (spec.getData() != null) {
+      notificationBuilder.setExtras(spec.getData());
     }
 
-    if (androidOptionsBundle.containsKey("badgeIconType")) {
-      int badgeIconType = (int) androidOptionsBundle.getDouble("badgeIconType");
-      notificationBuilder.setBadgeIconType(badgeIconType);
+    if (parts.sound != null) {
+      notificationBuilder.setSound(parts.sound);
     }
 
-    if (androidOptionsBundle.containsKey("category")) {
-      notificationBuilder.setCategory(androidOptionsBundle.getString("category"));
+    for (NotificationCompat.Action action : parts.actions) {
+      notificationBuilder.addAction(action);
     }
 
-    if (androidOptionsBundle.containsKey("channelId") && Build.VERSION.SDK_INT >= 26) {
-      NotificationChannel notificationChannel = getNotificationManager().getNotificationChannel(channelId);
+    if (android.hasAutoCancel()) {
+      notificationBuilder.setAutoCancel(android.autoCancel);
+    }
 
-      if (notificationChannel == null) {
-        throw new InvalidNotificationParameterException(
-          InvalidNotificationParameterException.CHANNEL_NOT_FOUND,
-          String.format("Notification channel does not exist for the specified id '%s'.", channelId)
-        );
-      }
+    if (android.hasBadgeIconType()) {
+      notificationBuilder.setBadgeIconType(android.badgeIconType);
+    }
 
-      // TODO do we even need to set this if its in the builder?
-      notificationBuilder.setChannelId(Objects.requireNonNull(channelId));
+    if (android.category != null) {
+      notificationBuilder.setCategory(android.category);
     }
 
-    if (androidOptionsBundle.containsKey("clickAction")) {
+    if (android.clickAction != null) {
       // todo clickAction
     }
 
-    if (androidOptionsBundle.containsKey("color")) {
-      int color = Color.parseColor(androidOptionsBundle.getString("color"));
-      notificationBuilder.setColor(color);
+    if (android.hasColor()) {
+      notificationBuilder.setColor(android.color);
     }
 
-    if (androidOptionsBundle.containsKey("colorized")) {
-      notificationBuilder.setColorized(androidOptionsBundle.getBoolean("colorized"));
+    if (android.hasColorized()) {
+      notificationBuilder.setColorized(android.colorized);
     }
 
-    if (androidOptionsBundle.containsKey("contentInfo")) {
-      notificationBuilder.setContentInfo(androidOptionsBundle.getString("contentInfo"));
+    if (android.contentInfo != null) {
+      notificationBuilder.setContentInfo(android.contentInfo);
     }
 
-    if (androidOptionsBundle.containsKey("defaults")) {
-      notificationBuilder.setDefaults(androidOptionsBundle.getInt("defaults"));
+    if (android.hasDefaults()) {
+      notificationBuilder.setDefaults(android.defaults);
     }
 
-    if (androidOptionsBundle.containsKey("group")) {
-      notificationBuilder.setGroup(androidOptionsBundle.getString("group"));
+    if (android.group != null) {
+      notificationBuilder.setGroup(android.group);
     }
 
-    if (androidOptionsBundle.containsKey("groupAlertBehavior")) {
-      int groupAlertBehavior = (int) androidOptionsBundle.getDouble("groupAlertBehavior");
-      notificationBuilder.setGroupAlertBehavior(groupAlertBehavior);
+    if (android.hasGroupAlertBehavior()) {
+      notificationBuilder.setGroupAlertBehavior(android.groupAlertBehavior);
     }
 
-    if (androidOptionsBundle.containsKey("groupSummary")) {
-      notificationBuilder.setGroupSummary(androidOptionsBundle.getBoolean("groupSummary"));
+    if (android.hasGroupSummary()) {
+      notificationBuilder.setGroupSummary(android.groupSummary);
     }
 
-    if (androidOptionsBundle.containsKey("largeIcon")) {
-      Bitmap largeIcon = getImageBitmap(Objects.requireNonNull(androidOptionsBundle.getString("largeIcon")));
+    if (android.largeIcon != null) {
+      Bitmap largeIcon = getImageBitmap(android.largeIcon, TARGET_LARGE_ICON);
 
       if (largeIcon != null) {
         notificationBuilder.setLargeIcon(largeIcon);
       }
     }
 
-    if (androidOptionsBundle.containsKey("lights")) {
-      ArrayList lightList = androidOptionsBundle.getParcelableArrayList("lights");
-      String rawColor = (String) lightList.get(0);
-      int color = Color.parseColor(rawColor);
-      int onMs = (int) lightList.get(1);
-      int offMs = (int) lightList.get(2);
-      notificationBuilder.setLights(color, onMs, offMs);
+    if (android.hasLights()) {
+      notificationBuilder.setLights(android.lightsColor, android.lightsOnMs, android.lightsOffMs);
     }
 
-    if (androidOptionsBundle.containsKey("localOnly")) {
-      notificationBuilder.setLocalOnly(androidOptionsBundle.getBoolean("localOnly"));
+    if (android.hasLocalOnly()) {
+      notificationBuilder.setLocalOnly(android.localOnly);
     }
 
-    if (androidOptionsBundle.containsKey("number")) {
-      notificationBuilder.setNumber((int) androidOptionsBundle.getDouble("number"));
+    if (android.hasNumber()) {
+      notificationBuilder.setNumber(android.number);
     }
 
-    if (androidOptionsBundle.containsKey("ongoing")) {
-      notificationBuilder.setOngoing(androidOptionsBundle.getBoolean("ongoing"));
+    if (android.hasOngoing()) {
+      notificationBuilder.setOngoing(android.ongoing);
     }
 
-    if (androidOptionsBundle.containsKey("onlyAlertOnce")) {
-      notificationBuilder.setOnlyAlertOnce(androidOptionsBundle.getBoolean("onlyAlertOnce"));
+    if (android.hasOnlyAlertOnce()) {
+      notificationBuilder.setOnlyAlertOnce(android.onlyAlertOnce);
     }
 
-    if (androidOptionsBundle.containsKey("priority")) {
-      notificationBuilder.setPriority((int) androidOptionsBundle.getDouble("priority"));
+    if (android.hasPriority()) {
+      notificationBuilder.setPriority(android.priority);
     }
 
-    if (androidOptionsBundle.containsKey("progress")) {
-      Bundle progressBundle = androidOptionsBundle.getBundle("progress");
-      int max = (int) progressBundle.getDouble("max");
-      int current = (int) progressBundle.getDouble("current");
-      boolean indeterminate = progressBundle.getBoolean("indeterminate");
-      notificationBuilder.setProgress(max, current, indeterminate);
+    if (android.hasProgress()) {
+      notificationBuilder.setProgress(android.progressMax, android.progressCurrent, android.progressIndeterminate);
     }
 
-    if (androidOptionsBundle.containsKey("remoteInputHistory")) {
-      ArrayList remoteInputHistory = androidOptionsBundle.getParcelableArrayList("remoteInputHistory");
-      String[] history = new String[remoteInputHistory.size()];
-      for (int i = 0; i < remoteInputHistory.size(); i++) {
-        history[i] = (String) remoteInputHistory.get(i);
-      }
-
-      notificationBuilder.setRemoteInputHistory(history);
+    String[] remoteInputHistory = android.getRemoteInputHistory();
+    if (remoteInputHistory != null) {
+      notificationBuilder.setRemoteInputHistory(remoteInputHistory);
     }
 
-    if (androidOptionsBundle.containsKey("shortcutId")) {
-      notificationBuilder.setShortcutId(androidOptionsBundle.getString("shortcutId"));
+    if (android.shortcutId != null) {
+      notificationBuilder.setShortcutId(android.shortcutId);
     }
 
-    if (androidOptionsBundle.containsKey("showWhenTimestamp")) {
-      notificationBuilder.setShowWhen(androidOptionsBundle.getBoolean("showWhenTimestamp"));
+    if (android.hasShowWhenTimestamp()) {
+      notificationBuilder.setShowWhen(android.showWhenTimestamp);
     }
 
-    if (androidOptionsBundle.containsKey("smallIcon")) {
-      ArrayList smallIconList = androidOptionsBundle.getParcelableArrayList("smallIcon");
-      String smallIconRaw = (String) smallIconList.get(0);
-      int smallIcon = getResourceIcon(smallIconRaw);
-
-      if (smallIcon != 0) {
-        int level = (int) smallIconList.get(1);
-        if (level == -1) {
-          notificationBuilder.setSmallIcon(smallIcon);
-        } else {
-          notificationBuilder.setSmallIcon(smallIcon, level);
-        }
+    if (android.hasSmallIcon() && android.smallIcon != 0) {
+      if (android.smallIconLevel == -1) {
+        notificationBuilder.setSmallIcon(android.smallIcon);
+      } else {
+        notificationBuilder.setSmallIcon(android.smallIcon, android.smallIconLevel);
       }
     }
 
-    if (androidOptionsBundle.containsKey("sortKey")) {
-      notificationBuilder.setSortKey(androidOptionsBundle.getString("sortKey"));
+    if (android.sortKey != null) {
+      notificationBuilder.setSortKey(android.sortKey);
     }
 
-    if (androidOptionsBundle.containsKey("style")) {
-      Bundle styleBundle = androidOptionsBundle.getBundle("style");
-      int type = (int) styleBundle.getDouble("type");
+    if (android.style != null) {
       NotificationCompat.Style style = null;
 
-      switch (type) {
-        case 0:
-          style = getBigPictureStyle(styleBundle);
+      switch (android.style.type) {
+        case ReactNativeFirebaseNotificationSpec.STYLE_BIG_PICTURE:
+          style = getBigPictureStyle(android.style);
           break;
-        case 1:
-          style = getBigTextStyle(styleBundle);
+        case ReactNativeFirebaseNotificationSpec.STYLE_BIG_TEXT:
+          style = getBigTextStyle(android.style);
           break;
       }
 
@@ -281,62 +431,64 @@ public class ReactNativeFirebaseNotification {
       }
     }
 
-    if (androidOptionsBundle.containsKey("ticker")) {
-      notificationBuilder.setTicker(androidOptionsBundle.getString("ticker"));
+    if (android.ticker != null) {
+      notificationBuilder.setTicker(android.ticker);
     }
 
-    if (androidOptionsBundle.containsKey("timeoutAfter")) {
-      long timeoutAfter = (long) androidOptionsBundle.getDouble("timeoutAfter");
-      notificationBuilder.setTimeoutAfter(timeoutAfter);
+    if (android.hasTimeoutAfter()) {
+      notificationBuilder.setTimeoutAfter(android.timeoutAfter);
     }
 
-    if (androidOptionsBundle.containsKey("usesChronometer")) {
-      notificationBuilder.setUsesChronometer(androidOptionsBundle.getBoolean("usesChronometer"));
+    if (android.hasUsesChronometer()) {
+      notificationBuilder.setUsesChronometer(android.usesChronometer);
     }
 
-    if (androidOptionsBundle.containsKey("vibrationPattern")) {
-      ArrayList vibrationPattern = androidOptionsBundle.getParcelableArrayList("vibrationPattern");
-      long[] vibrateArray = new long[vibrationPattern.size()];
-
-      for (int i = 0; i < vibrationPattern.size(); i++) {
-        Integer value = (Integer) vibrationPattern.get(i);
-        vibrateArray[i] = value.longValue();
-      }
-
-      notificationBuilder.setVibrate(vibrateArray);
+    long[] vibrationPattern = android.getVibrationPattern();
+    if (vibrationPattern != null) {
+      notificationBuilder.setVibrate(vibrationPattern);
     }
 
-    if (androidOptionsBundle.containsKey("visibility")) {
-      notificationBuilder.setVisibility((int) androidOptionsBundle.getDouble("visibility"));
+    if (android.hasVisibility()) {
+      notificationBuilder.setVisibility(android.visibility);
     }
 
-    if (androidOptionsBundle.containsKey("when")) {
-      long when = (long) androidOptionsBundle.getDouble("when");
-      notificationBuilder.setWhen(when);
+    if (android.hasWhen()) {
+      notificationBuilder.setWhen(android.when);
     }
 
-    notificationBuilder.setContentIntent(createBroadcastIntent(getApplicationContext(), androidOptionsBundle, "clicked"));
+    notificationBuilder.setContentIntent(parts.contentIntent);
+
+    return notificationBuilder;
+  }
 
-    return notificationBuilder.build();
+  private static class CompiledParts {
+    String channelId;
+    Uri sound;
+    List<NotificationCompat.Action> actions = new ArrayList<>();
+    PendingIntent contentIntent;
+
+    /**
+     * A copy keeping the resolved channel and sound, its actions and intents are rebuilt.
+     */
+    CompiledParts withoutIntents() {
+      CompiledParts parts = new CompiledParts();
+      parts.channelId = channelId;
+      parts.sound = sound;
+      return parts;
+    }
   }
 
   private NotificationCompat.Action buildNotificationAction(
     Context ctx,
-    Bundle action,
+    ReactNativeFirebaseNotificationSpec.Action action,
     Class intentClass,
     Bundle notificationBundle
   ) {
-    String actionKey = action.getString("action");
-    boolean showUserInterface = action.containsKey("showUserInterface") && action.getBoolean("showUserInterface");
-
-    PendingIntent actionIntent = showUserInterface ?
-      createIntent(ctx, intentClass, notificationBundle, actionKey) :
-      createBroadcastIntent(ctx, notificationBundle, actionKey);
+    PendingIntent actionIntent = action.showUserInterface ?
+      createIntent(ctx, intentClass, notificationBundle, action.action) :
+      createBroadcastIntent(ctx, notificationBundle, action.action);
 
-    int icon = getResourceIcon(action.getString("icon"));
-    String title = action.getString("title");
-
-    NotificationCompat.Action.Builder builder = new NotificationCompat.Action.Builder(icon, title, actionIntent);
+    NotificationCompat.Action.Builder builder = new NotificationCompat.Action.Builder(action.icon, action.title, actionIntent);
 
     return builder.build();
   }
@@ -345,31 +497,31 @@ public class ReactNativeFirebaseNotification {
   /**
    * BigPictureStyle
    */
-  private NotificationCompat.BigPictureStyle getBigPictureStyle(Bundle bigPictureStyleBundle) {
+  private NotificationCompat.BigPictureStyle getBigPictureStyle(ReactNativeFirebaseNotificationSpec.Style styleSpec) {
     NotificationCompat.BigPictureStyle bigPictureStyle = new NotificationCompat.BigPictureStyle();
 
-    if (bigPictureStyleBundle.containsKey("picture")) {
-      Bitmap picture = getImageBitmap(Objects.requireNonNull(bigPictureStyleBundle.getString("picture")));
+    if (styleSpec.picture != null) {
+      Bitmap picture = getImageBitmap(styleSpec.picture, TARGET_BIG_PICTURE);
 
       if (picture != null) {
         bigPictureStyle.bigPicture(picture);
       }
     }
 
-    if (bigPictureStyleBundle.containsKey("largeIcon")) {
-      Bitmap largeIcon = getImageBitmap(Objects.requireNonNull(bigPictureStyleBundle.getString("largeIcon")));
+    if (styleSpec.largeIcon != null) {
+      Bitmap largeIcon = getImageBitmap(styleSpec.largeIcon, TARGET_LARGE_ICON);
 
       if (largeIcon != null) {
         bigPictureStyle.bigLargeIcon(largeIcon);
       }
     }
 
-    if (bigPictureStyleBundle.containsKey("title")) {
-      bigPictureStyle = bigPictureStyle.setBigContentTitle(bigPictureStyleBundle.getString("title"));
+    if (styleSpec.title != null) {
+      bigPictureStyle = bigPictureStyle.setBigContentTitle(styleSpec.title);
     }
 
-    if (bigPictureStyleBundle.containsKey("summary")) {
-      bigPictureStyle = bigPictureStyle.setSummaryText(bigPictureStyleBundle.getString("summary"));
+    if (styleSpec.summary != null) {
+      bigPictureStyle = bigPictureStyle.setSummaryText(styleSpec.summary);
     }
 
     return bigPictureStyle;
@@ -378,76 +530,155 @@ public class ReactNativeFirebaseNotification {
   /**
    * BigTextStyle
    */
-  private NotificationCompat.BigTextStyle getBigTextStyle(Bundle bigTextStyleBundle) {
+  private NotificationCompat.BigTextStyle getBigTextStyle(ReactNativeFirebaseNotificationSpec.Style styleSpec) {
     NotificationCompat.BigTextStyle bigTextStyle = new NotificationCompat.BigTextStyle();
 
-    if (bigTextStyleBundle.containsKey("text")) {
-      bigTextStyle = bigTextStyle.bigText(bigTextStyleBundle.getString("text"));
+    if (styleSpec.text != null) {
+      bigTextStyle = bigTextStyle.bigText(styleSpec.text);
     }
 
-    if (bigTextStyleBundle.containsKey("title")) {
-      bigTextStyle = bigTextStyle.setBigContentTitle(bigTextStyleBundle.getString("title"));
+    if (styleSpec.title != null) {
+      bigTextStyle = bigTextStyle.setBigContentTitle(styleSpec.title);
     }
 
-    if (bigTextStyleBundle.containsKey("summary")) {
-      bigTextStyle = bigTextStyle.setSummaryText(bigTextStyleBundle.getString("summary"));
+    if (styleSpec.summary != null) {
+      bigTextStyle = bigTextStyle.setSummaryText(styleSpec.summary);
     }
 
     return bigTextStyle;
   }
 
   /**
-   * Returns a Bitmap from a user image (local/url)
+   * Starts loading every image this notification references on the image pool. Called ahead
+   * of displayNotification when displaying a batch, so the images of all notifications load
+   * in parallel.
    */
-  private Bitmap getImageBitmap(String image) {
-    if (image.startsWith("http://") || image.startsWith("https://")) {
-      return getBitmapFromHttpUrl(image);
-    }
+  void fetchImages() {
+    if (imagesRequested) return;
+    imagesRequested = true;
 
-    if (image.startsWith("file://")) {
-      return BitmapFactory.decodeFile(image.replace("file://", ""));
+    Map<String, Pair<String, Integer>> images = new HashMap<>();
+
+    addImage(images, spec.android.largeIcon, TARGET_LARGE_ICON);
+
+    ReactNativeFirebaseNotificationSpec.Style style = spec.android.style;
+    if (style != null) {
+      addImage(images, style.picture, TARGET_BIG_PICTURE);
+      addImage(images, style.largeIcon, TARGET_LARGE_ICON);
     }
 
-    int resourceId = getResourceIcon(image);
+    if (images.isEmpty()) return;
 
-    return BitmapFactory.decodeResource(
-      getApplicationContext().getResources(),
-      resourceId
-    );
+    // share the decoded bytes budget between all images of this notification
+    long maxBytes = ReactNativeFirebaseNotificationBitmapDecoder.getMaxBytesPerNotification() / images.size();
+    for (Map.Entry<String, Pair<String, Integer>> image : images.entrySet()) {
+      // kept from the notification this one was patched from
+      if (imageTasks.containsKey(image.getKey())) continue;
+
+      String source = Objects.requireNonNull(image.getValue().first);
+      int target = Objects.requireNonNull(image.getValue().second);
+      imageTasks.put(image.getKey(), ReactNativeFirebaseNotificationImageFetcher.fetch(source, target, maxBytes));
+    }
   }
 
-  private Bitmap getBitmapFromHttpUrl(String httpUrl) {
-    // TODO should probably be using fresco for this, comes with RN, comes with caching e.g for offline
-    // this will hang if no connection?
-    try {
-      HttpURLConnection connection = (HttpURLConnection) new URL(httpUrl).openConnection();
-      connection.setDoInput(true);
-      connection.connect();
-      return BitmapFactory.decodeStream(connection.getInputStream());
-    } catch (IOException e) {
-      Log.e(TAG, "Failed to get bitmap for url: " + httpUrl, e);
-      return null;
+  private static void addImage(Map<String, Pair<String, Integer>> images, String image, int target) {
+    if (image != null) {
+      images.put(getImageKey(image, target), new Pair<>(image, target));
     }
   }
 
-  private int getResourceIcon(String icon) {
-    int resourceId = getResIdByName(getApplicationContext(), icon, "mipmap");
-    if (resourceId == 0) {
-      resourceId = getResIdByName(getApplicationContext(), icon, "drawable");
+  static String getImageKey(String image, int target) {
+    return target + ":" + image;
+  }
+
+  /**
+   * Returns a Bitmap from a user image (local/url), or null if it has not loaded yet
+   */
+  private Bitmap getImageBitmap(String image, int target) {
+    return ReactNativeFirebaseNotificationImageFetcher.getIfReady(imageTasks.get(getImageKey(image, target)));
+  }
+
+  private boolean isNotificationActive(String notificationTag, int notificationId) {
+    if (Build.VERSION.SDK_INT < 23) return true;
+
+    for (StatusBarNotification statusBarNotification : getNotificationManager().getActiveNotifications()) {
+      if (statusBarNotification.getId() == notificationId && Objects.equals(statusBarNotification.getTag(), notificationTag)) {
+        return true;
+      }
     }
 
-    return resourceId;
+    return false;
+  }
+
+  /**
+   * Re-posts the notification in place once images that missed the deadline have loaded
+   */
+  private void updateWhenImagesReady(Task<?> imagesTask, String notificationTag, int notificationId) {
+    imagesTask.addOnCompleteListener(ReactNativeFirebaseNotificationImageFetcher.getExecutor(), task -> {
+      try {
+        if (!isNotificationActive(notificationTag, notificationId)) return;
+
+        Notification notification;
+        synchronized (this) {
+          retainedBuilder = getNotificationBuilder();
+          if (progressUpdated) retainedBuilder.setProgress(progressMax, progressCurrent, progressIndeterminate);
+          notification = retainedBuilder.setOnlyAlertOnce(true).build();
+        }
+
+        post(notificationTag, notificationId, notification);
+      } catch (Exception e) {
+        Log.e(TAG, "Failed to update notification with loaded images", e);
+      }
+    });
+  }
+
+  /**
+   * Progress updates go through the update scheduler which coalesces them, anything else is
+   * posted right away.
+   */
+  private void post(String notificationTag, int notificationId, Notification notification) {
+    ReactNativeFirebaseNotificationUpdateScheduler.post(
+      notificationTag,
+      notificationId,
+      notification,
+      !spec.android.isInProgress()
+    );
   }
 
   public void displayNotification() {
-    String notificationId = Objects.requireNonNull(notificationBundle.getString("notificationId"));
+    displayNotification(SystemClock.elapsedRealtime() + ReactNativeFirebaseNotificationImageFetcher.getDeadline());
+  }
 
-    String notificationTag = null;
-    if (androidOptionsBundle.containsKey("tag")) {
-      notificationTag = Objects.requireNonNull(androidOptionsBundle.getString("tag"));
+  /**
+   * Displays the notification, waiting for its images until imagesDeadline at the latest.
+   *
+   * @param imagesDeadline in SystemClock.elapsedRealtime() time, shared by a batch so its
+   *                       notifications don't each wait the full deadline
+   */
+  void displayNotification(long imagesDeadline) {
+    String notificationId = Objects.requireNonNull(spec.notificationId);
+    String notificationTag = spec.android.tag;
+
+    fetchImages();
+    Task<?> imagesTask = Tasks.whenAllComplete(imageTasks.values());
+    boolean imagesReady = ReactNativeFirebaseNotificationImageFetcher.await(
+      imagesTask,
+      imagesDeadline - SystemClock.elapsedRealtime()
+    );
+
+    Notification notification;
+    synchronized (this) {
+      retainedBuilder = getNotificationBuilder();
+      notification = retainedBuilder.build();
     }
 
-    getNotificationManagerCompat().notify(notificationTag, notificationId.hashCode(), getNotification());
+    post(notificationTag, notificationId.hashCode(), notification);
+    retainedNotifications.put(notificationId, this);
+    ReactNativeFirebaseNotificationGroupSummaries.onNotificationPosted(spec, getCompiledParts().channelId, notificationTag, notificationId.hashCode());
+
+    if (!imagesReady) {
+      updateWhenImagesReady(imagesTask, notificationTag, notificationId.hashCode());
+    }
 
     if (SharedUtils.isAppInForeground(getApplicationContext())) {
       ReactNativeFirebaseEventEmitter eventEmitter = ReactNativeFirebaseEventEmitter.getSharedInstance();
@@ -0,0 +1,316 @@
+/*
+ * Copyright (c) 2019-present Madhusudan Sapkota & Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this library except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.invertase.firebase.notifications;
+
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.Nullable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Properties;
+
+import io.invertase.firebase.common.ReactNativeFirebaseJSON;
+
+import static io.invertase.firebase.app.ReactNativeFirebaseApp.getApplicationContext;
+
+/**
+ * Two tier cache for notification images: decoded bitmaps are kept in a size bounded
+ * in-memory LRU, and downloaded http(s) images are kept on disk in the app cache directory
+ * together with their ETag / Last-Modified validators.
+ */
+class ReactNativeFirebaseNotificationBitmapCache {
+  private static final String TAG = "RNFNotificationCache";
+
+  private static final String MEMORY_CACHE_SIZE_JSON_KEY = "notification_android_image_memory_cache_size";
+  private static final String DISK_CACHE_SIZE_JSON_KEY = "notification_android_image_disk_cache_size";
+  private static final String MAX_AGE_JSON_KEY = "notification_android_image_cache_max_age";
+
+  private static final long DISK_CACHE_SIZE_DEFAULT = 20 * 1024 * 1024;
+  private static final long MAX_AGE_DEFAULT = 60 * 60 * 1000;
+
+  private static final String DIRECTORY_NAME = "rnfb-notification-images";
+  private static final String META_SUFFIX = ".meta";
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  private static final String META_ETAG = "etag";
+  private static final String META_LAST_MODIFIED = "lastModified";
+  private static final String META_VALIDATED_AT = "validatedAt";
+
+  private static LruCache<String, CachedBitmap> memoryCache;
+
+  private static synchronized LruCache<String, CachedBitmap> getMemoryCache() {
+    if (memoryCache == null) {
+      long defaultSize = Runtime.getRuntime().maxMemory() / 16;
+      long size = ReactNativeFirebaseJSON.getSharedInstance().getLongValue(MEMORY_CACHE_SIZE_JSON_KEY, defaultSize);
+
+      memoryCache = new LruCache<String, CachedBitmap>((int) Math.max(1, Math.min(size, Integer.MAX_VALUE))) {
+        @Override
+        protected int sizeOf(String key, CachedBitmap value) {
+          return value.bitmap.getByteCount();
+        }
+      };
+
+      getApplicationContext().registerComponentCallbacks(new ComponentCallbacks2() {
+        @Override
+        public void onTrimMemory(int level) {
+          trimMemory(level);
+        }
+
+        @Override
+        public void onLowMemory() {
+          trimMemory(TRIM_MEMORY_COMPLETE);
+        }
+
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+        }
+      });
+    }
+
+    return memoryCache;
+  }
+
+  static long getMaxAge() {
+    return ReactNativeFirebaseJSON.getSharedInstance().getLongValue(MAX_AGE_JSON_KEY, MAX_AGE_DEFAULT);
+  }
+
+  static String getKey(String image, int width, int height) {
+    return image + "@" + width + "x" + height;
+  }
+
+  static @Nullable
+  CachedBitmap getBitmap(String key) {
+    return getMemoryCache().get(key);
+  }
+
+  static void putBitmap(String key, Bitmap bitmap, long expiresAt) {
+    getMemoryCache().put(key, new CachedBitmap(bitmap, expiresAt));
+  }
+
+  /**
+   * Releases cached bitmaps when the system is low on memory: all of them once the app is in
+   * the background or memory is critical, half of them while it is running low.
+   */
+  private static void trimMemory(int level) {
+    LruCache<String, CachedBitmap> cache = getMemoryCache();
+    if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+      cache.evictAll();
+    } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+      cache.trimToSize(cache.size() / 2);
+    }
+  }
+
+  static DiskEntry getDiskEntry(String url) {
+    return new DiskEntry(new File(getDirectory(), hash(url)));
+  }
+
+  private static File getDirectory() {
+    File directory = new File(getApplicationContext().getCacheDir(), DIRECTORY_NAME);
+    if (!directory.exists() && !directory.mkdirs()) {
+      Log.w(TAG, "Failed to create image cache directory " + directory);
+    }
+
+    return directory;
+  }
+
+  /**
+   * Deletes the least recently validated images until the disk cache is within its size limit.
+   */
+  private static synchronized void trimDiskCache() {
+    long maxSize = ReactNativeFirebaseJSON.getSharedInstance().getLongValue(DISK_CACHE_SIZE_JSON_KEY, DISK_CACHE_SIZE_DEFAULT);
+    File[] files = getDirectory().listFiles(file -> !file.getName().endsWith(META_SUFFIX) && !file.getName().endsWith(TEMP_SUFFIX));
+    if (files == null) return;
+
+    long size = 0;
+    for (File file : files) {
+      size += file.length();
+    }
+
+    if (size <= maxSize) return;
+
+    Arrays.sort(files, (a, b) -> {
+      long difference = a.lastModified() - b.lastModified();
+      return difference < 0 ? -1 : (difference > 0 ? 1 : 0);
+    });
+
+    for (File file : files) {
+      if (size <= maxSize) break;
+      size -= file.length();
+      new DiskEntry(file).delete();
+    }
+  }
+
+  private static String hash(String value) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      StringBuilder builder = new StringBuilder();
+      for (byte b : digest.digest(value.getBytes("UTF-8"))) {
+        builder.append(String.format("%02x", b));
+      }
+      return builder.toString();
+    } catch (NoSuchAlgorithmException | IOException e) {
+      return Integer.toHexString(value.hashCode());
+    }
+  }
+
+  static class CachedBitmap {
+    final Bitmap bitmap;
+    final long expiresAt;
+
+    CachedBitmap(Bitmap bitmap, long expiresAt) {
+      this.bitmap = bitmap;
+      this.expiresAt = expiresAt;
+    }
+
+    boolean isFresh() {
+      return System.currentTimeMillis() < expiresAt;
+    }
+  }
+
+  static class DiskEntry {
+    final File file;
+    private final File metaFile;
+    private Properties meta;
+
+    private DiskEntry(File file) {
+      this.file = file;
+      this.metaFile = new File(file.getPath() + META_SUFFIX);
+    }
+
+    boolean exists() {
+      return file.exists();
+    }
+
+    @Nullable
+    String getETag() {
+      return getMeta().getProperty(META_ETAG);
+    }
+
+    @Nullable
+    String getLastModified() {
+      return getMeta().getProperty(META_LAST_MODIFIED);
+    }
+
+    long getExpiresAt() {
+      long validatedAt = Long.parseLong(getMeta().getProperty(META_VALIDATED_AT, "0"));
+      return validatedAt + getMaxAge();
+    }
+
+    boolean isFresh() {
+      return exists() && System.currentTimeMillis() < getExpiresAt();
+    }
+
+    /**
+     * Records that the server confirmed the cached copy is still current.
+     */
+    void markValidated() {
+      long now = System.currentTimeMillis();
+      getMeta().setProperty(META_VALIDATED_AT, String.valueOf(now));
+      writeMeta();
+      if (!file.setLastModified(now)) {
+        Log.d(TAG, "Failed to touch cached image " + file);
+      }
+    }
+
+    /**
+     * Replaces the cached copy with the given response body.
+     */
+    void write(InputStream inputStream, @Nullable String etag, @Nullable String lastModified) throws IOException {
+      File tempFile = File.createTempFile(file.getName(), TEMP_SUFFIX, file.getParentFile());
+      OutputStream outputStream = new FileOutputStream(tempFile);
+
+      try {
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+          outputStream.write(buffer, 0, read);
+        }
+      } finally {
+        outputStream.close();
+      }
+
+      if (!tempFile.renameTo(file)) {
+        tempFile.delete();
+        throw new IOException("Failed to move downloaded image into cache " + file);
+      }
+
+      meta = new Properties();
+      if (etag != null) meta.setProperty(META_ETAG, etag);
+      if (lastModified != null) meta.setProperty(META_LAST_MODIFIED, lastModified);
+      markValidated();
+      trimDiskCache();
+    }
+
+    void delete() {
+      file.delete();
+      metaFile.delete();
+    }
+
+    private Properties getMeta() {
+      if (meta == null) {
+        meta = new Properties();
+        if (metaFile.exists()) {
+          InputStream inputStream = null;
+          try {
+            inputStream = new FileInputStream(metaFile);
+            meta.load(inputStream);
+          } catch (IOException e) {
+            Log.w(TAG, "Failed to read cache metadata " + metaFile, e);
+          } finally {
+            closeQuietly(inputStream);
+          }
+        }
+      }
+
+      return meta;
+    }
+
+    private void writeMeta() {
+      OutputStream outputStream = null;
+      try {
+        outputStream = new FileOutputStream(metaFile);
+        getMeta().store(outputStream, null);
+      } catch (IOException e) {
+        Log.w(TAG, "Failed to write cache metadata " + metaFile, e);
+      } finally {
+        closeQuietly(outputStream);
+      }
+    }
+  }
+
+  private static void closeQuietly(@Nullable Closeable closeable) {
+    if (closeable == null) return;
+    try {
+      closeable.close();
+    } catch (IOException ignore) {
+    }
+  }
+}
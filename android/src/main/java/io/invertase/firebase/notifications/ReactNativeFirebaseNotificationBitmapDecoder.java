@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2019-present Madhusudan Sapkota & Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this library except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.invertase.firebase.notifications;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.DisplayMetrics;
+
+import androidx.annotation.Nullable;
+
+import io.invertase.firebase.common.ReactNativeFirebaseJSON;
+
+import static io.invertase.firebase.app.ReactNativeFirebaseApp.getApplicationContext;
+
+/**
+ * Decodes notification images at the size they are displayed at rather than at full
+ * resolution: bounds are read first, the image is subsampled towards the target size and
+ * opaque images are decoded as RGB_565.
+ */
+class ReactNativeFirebaseNotificationBitmapDecoder {
+  static final int TARGET_LARGE_ICON = 0;
+  static final int TARGET_BIG_PICTURE = 1;
+
+  private static final String MAX_BYTES_JSON_KEY = "notification_android_image_max_bytes";
+  private static final long MAX_BYTES_DEFAULT = 12 * 1024 * 1024;
+
+  // the expanded BigPictureStyle is at most 256dp tall
+  private static final int BIG_PICTURE_MAX_HEIGHT_DP = 256;
+
+  /**
+   * The maximum number of bytes all decoded images of a single notification may use.
+   */
+  static long getMaxBytesPerNotification() {
+    return ReactNativeFirebaseJSON.getSharedInstance().getLongValue(MAX_BYTES_JSON_KEY, MAX_BYTES_DEFAULT);
+  }
+
+  static int getTargetWidth(int target) {
+    Resources resources = getApplicationContext().getResources();
+
+    if (target == TARGET_LARGE_ICON) {
+      return resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width);
+    }
+
+    DisplayMetrics displayMetrics = resources.getDisplayMetrics();
+    return Math.min(displayMetrics.widthPixels, displayMetrics.heightPixels);
+  }
+
+  static int getTargetHeight(int target) {
+    Resources resources = getApplicationContext().getResources();
+
+    if (target == TARGET_LARGE_ICON) {
+      return resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_height);
+    }
+
+    return Math.round(BIG_PICTURE_MAX_HEIGHT_DP * resources.getDisplayMetrics().density);
+  }
+
+  static @Nullable
+  Bitmap decodeFile(String path, int targetWidth, int targetHeight, long maxBytes) {
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inJustDecodeBounds = true;
+    BitmapFactory.decodeFile(path, options);
+    if (options.outWidth <= 0 || options.outHeight <= 0) return null;
+
+    prepareOptions(options, targetWidth, targetHeight, maxBytes);
+    return scaleToTarget(BitmapFactory.decodeFile(path, options), targetWidth, targetHeight);
+  }
+
+  static @Nullable
+  Bitmap decodeResource(Resources resources, int resourceId, int targetWidth, int targetHeight, long maxBytes) {
+    if (resourceId == 0) return null;
+
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inJustDecodeBounds = true;
+    BitmapFactory.decodeResource(resources, resourceId, options);
+    if (options.outWidth <= 0 || options.outHeight <= 0) return null;
+
+    prepareOptions(options, targetWidth, targetHeight, maxBytes);
+    return scaleToTarget(BitmapFactory.decodeResource(resources, resourceId, options), targetWidth, targetHeight);
+  }
+
+  /**
+   * Turns a bounds-only Options into one that decodes at the smallest power of two sample
+   * size still covering the target, and within maxBytes.
+   */
+  private static void prepareOptions(BitmapFactory.Options options, int targetWidth, int targetHeight, long maxBytes) {
+    // JPEGs can't carry an alpha channel, so the cheaper 16 bit config loses nothing visible
+    boolean opaque = "image/jpeg".equals(options.outMimeType);
+    int bytesPerPixel = opaque ? 2 : 4;
+
+    int sampleSize = 1;
+    if (targetWidth > 0 && targetHeight > 0) {
+      while (options.outWidth / (sampleSize * 2) >= targetWidth && options.outHeight / (sampleSize * 2) >= targetHeight) {
+        sampleSize *= 2;
+      }
+    }
+
+    if (maxBytes > 0) {
+      while ((long) (options.outWidth / sampleSize) * (options.outHeight / sampleSize) * bytesPerPixel > maxBytes) {
+        sampleSize *= 2;
+      }
+    }
+
+    options.inJustDecodeBounds = false;
+    options.inSampleSize = sampleSize;
+    options.inPreferredConfig = opaque ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+  }
+
+  /**
+   * Returns the bitmap if it uses at most maxBytes, otherwise a scaled down copy which does.
+   * The original is left untouched as it may be shared.
+   */
+  static Bitmap limitBytes(Bitmap bitmap, long maxBytes) {
+    long byteCount = bitmap.getByteCount();
+    if (maxBytes <= 0 || byteCount <= maxBytes) return bitmap;
+
+    double scale = Math.sqrt((double) maxBytes / byteCount);
+    int width = Math.max(1, (int) (bitmap.getWidth() * scale));
+    int height = Math.max(1, (int) (bitmap.getHeight() * scale));
+    return Bitmap.createScaledBitmap(bitmap, width, height, true);
+  }
+
+  /**
+   * Subsampling only gets within a factor of two of the target, scale the rest of the way
+   * so the cached bitmap is no larger than what is displayed.
+   */
+  private static @Nullable
+  Bitmap scaleToTarget(@Nullable Bitmap bitmap, int targetWidth, int targetHeight) {
+    if (bitmap == null || targetWidth <= 0 || targetHeight <= 0) return bitmap;
+
+    // cover the target rather than fit inside it, the system crops or scales the rest
+    float scale = Math.max(
+      (float) targetWidth / bitmap.getWidth(),
+      (float) targetHeight / bitmap.getHeight()
+    );
+
+    if (scale >= 1) return bitmap;
+
+    int width = Math.max(1, Math.round(bitmap.getWidth() * scale));
+    int height = Math.max(1, Math.round(bitmap.getHeight() * scale));
+
+    Bitmap scaled = Bitmap.createScaledBitmap(bitmap, width, height, true);
+    if (scaled != bitmap) bitmap.recycle();
+    return scaled;
+  }
+}
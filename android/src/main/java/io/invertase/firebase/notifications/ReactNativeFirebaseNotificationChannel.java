@@ -21,10 +21,12 @@ import android.app.NotificationChannel;
 import android.app.NotificationChannelGroup;
 import android.app.NotificationManager;
 import android.content.Context;
-import android.graphics.Color;
+import android.content.SharedPreferences;
 import android.net.Uri;
 import android.os.Build;
+import android.os.SystemClock;
 
+import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 
 import com.facebook.react.bridge.Arguments;
@@ -33,28 +35,46 @@ import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
 
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static io.invertase.firebase.app.ReactNativeFirebaseApp.getApplicationContext;
 import static io.invertase.firebase.notifications.ReactNativeFirebaseNotificationUtils.getFileName;
 import static io.invertase.firebase.notifications.ReactNativeFirebaseNotificationUtils.getSoundUri;
+import static io.invertase.firebase.notifications.ReactNativeFirebaseNotificationUtils.parseColor;
 
 class ReactNativeFirebaseNotificationChannel {
+  // channels already converted for JS, reused while the channel is unchanged
+  private static final Map<String, ConvertedChannel> convertedChannels = new ConcurrentHashMap<>();
+
+  private static final String DEFAULT_CHANNEL_ID = "99";
+
+  private static final String SYNC_PREFERENCES_NAME = "io.invertase.firebase.notifications.channels";
+  private static final String SYNC_HASH_KEY = "syncHash";
+
   private static NotificationManager getNotificationManager() {
     return (NotificationManager) getApplicationContext().getSystemService(Context.NOTIFICATION_SERVICE);
   }
 
   public static String createDefaultChannel() {
     if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.O) {
-      String id = "99";
+      String id = DEFAULT_CHANNEL_ID;
       String name = "default";
       try {
-        NotificationChannel notificationChannel = getNotificationManager().getNotificationChannel(id);
-        if (notificationChannel == null) {
+        if (!channelExists(id)) {
           NotificationChannel channel = new NotificationChannel(id, name, NotificationManager.IMPORTANCE_DEFAULT);
           getNotificationManager().createNotificationChannel(channel);
+          ReactNativeFirebaseNotificationChannelSnapshot.invalidate();
         }
       } catch (Exception ignore) {
       }
@@ -63,6 +83,16 @@ class ReactNativeFirebaseNotificationChannel {
     return null;
   }
 
+  /**
+   * Whether a channel exists. Always asked of the NotificationManager, a single channel
+   * lookup, as a channel deleted outside of this module would otherwise still pass and the
+   * system silently drops notifications posted to it.
+   */
+  static boolean channelExists(String channelId) {
+    if (Build.VERSION.SDK_INT < 26) return true;
+    return getNotificationManager().getNotificationChannel(channelId) != null;
+  }
+
   static WritableMap getChannel(String channelId) {
     if (Build.VERSION.SDK_INT >= 26) {
       return createChannelMap(getNotificationManager().getNotificationChannel(channelId));
@@ -73,7 +103,33 @@ class ReactNativeFirebaseNotificationChannel {
 
   static WritableArray getChannels() {
     if (Build.VERSION.SDK_INT >= 26) {
-      return createChannelsArray(getNotificationManager().getNotificationChannels());
+      List<NotificationChannel> notificationChannels = ReactNativeFirebaseNotificationChannelSnapshot.getChannels(getNotificationManager());
+      return createChannelsArray(notificationChannels);
+    }
+
+    return null;
+  }
+
+  /**
+   * Returns the channels added or changed and the ids of channels removed since the given
+   * snapshot version, along with the current version to pass next time.
+   */
+  static WritableMap getChannelsSince(long version) {
+    if (Build.VERSION.SDK_INT >= 26) {
+      ReactNativeFirebaseNotificationChannelSnapshot.Delta delta =
+        ReactNativeFirebaseNotificationChannelSnapshot.getChannelsSince(getNotificationManager(), version);
+
+      WritableArray removed = Arguments.createArray();
+      for (String channelId : delta.removed) {
+        removed.pushString(channelId);
+      }
+
+      WritableMap writableMap = Arguments.createMap();
+      writableMap.putDouble("version", delta.version);
+      writableMap.putBoolean("reset", delta.reset);
+      writableMap.putArray("channels", createChannelsArray(delta.changed));
+      writableMap.putArray("removedChannelIds", removed);
+      return writableMap;
     }
 
     return null;
@@ -89,7 +145,7 @@ class ReactNativeFirebaseNotificationChannel {
 
   static WritableArray getChannelGroups() {
     if (Build.VERSION.SDK_INT >= 26) {
-      return createChannelGroupsArray(getNotificationManager().getNotificationChannelGroups());
+      return createChannelGroupsArray(ReactNativeFirebaseNotificationChannelSnapshot.getChannelGroups(getNotificationManager()));
     }
 
     return null;
@@ -100,6 +156,7 @@ class ReactNativeFirebaseNotificationChannel {
       NotificationChannel channel = parseChannelMap(channelMap);
       if (channel != null) {
         getNotificationManager().createNotificationChannel(channel);
+        ReactNativeFirebaseNotificationChannelSnapshot.invalidate();
       }
     }
   }
@@ -109,6 +166,7 @@ class ReactNativeFirebaseNotificationChannel {
       NotificationChannelGroup channelGroup = parseChannelGroupMap(channelGroupMap);
       if (channelGroup != null) {
         getNotificationManager().createNotificationChannelGroup(channelGroup);
+        ReactNativeFirebaseNotificationChannelSnapshot.invalidate();
       }
     }
   }
@@ -121,6 +179,7 @@ class ReactNativeFirebaseNotificationChannel {
         channelGroups.add(channelGroup);
       }
       getNotificationManager().createNotificationChannelGroups(channelGroups);
+      ReactNativeFirebaseNotificationChannelSnapshot.invalidate();
     }
   }
 
@@ -132,18 +191,241 @@ class ReactNativeFirebaseNotificationChannel {
         channels.add(channel);
       }
       getNotificationManager().createNotificationChannels(channels);
+      ReactNativeFirebaseNotificationChannelSnapshot.invalidate();
+    }
+  }
+
+  /**
+   * Brings the app's channels and channel groups in line with the desired configuration,
+   * creating or updating only what differs from the current NotificationManager state and,
+   * with deleteUnknown, deleting channels and groups which are not part of it.
+   *
+   * A hash of the last applied configuration is persisted; when it matches and all desired
+   * channels still exist nothing is parsed or submitted.
+   */
+  static WritableMap syncChannels(ReadableArray groupsArray, ReadableArray channelsArray, boolean deleteUnknown) {
+    WritableMap result = Arguments.createMap();
+    result.putBoolean("skipped", true);
+    result.putInt("groupsCreated", 0);
+    result.putInt("groupsDeleted", 0);
+    result.putInt("channelsCreated", 0);
+    result.putInt("channelsUpdated", 0);
+    result.putInt("channelsDeleted", 0);
+
+    if (Build.VERSION.SDK_INT < 26) return result;
+
+    String hash = hashChannelConfig(groupsArray, channelsArray, deleteUnknown);
+    SharedPreferences preferences = getApplicationContext().getSharedPreferences(SYNC_PREFERENCES_NAME, Context.MODE_PRIVATE);
+
+    NotificationManager notificationManager = getNotificationManager();
+
+    // channels and groups created elsewhere since the last sync still need to be deleted
+    if (hash.equals(preferences.getString(SYNC_HASH_KEY, null)) && channelsExist(notificationManager, channelsArray) &&
+      (!deleteUnknown || !hasUnknownChannels(notificationManager, groupsArray, channelsArray))) {
+      return result;
+    }
+
+    Map<String, NotificationChannelGroup> currentGroups = new HashMap<>();
+    for (NotificationChannelGroup group : ReactNativeFirebaseNotificationChannelSnapshot.getChannelGroups(notificationManager)) {
+      currentGroups.put(group.getId(), group);
+    }
+
+    Set<String> desiredGroupIds = new HashSet<>();
+    List<NotificationChannelGroup> groupsToCreate = new ArrayList<>();
+    for (int i = 0; i < groupsArray.size(); i++) {
+      NotificationChannelGroup group = parseChannelGroupMap(Objects.requireNonNull(groupsArray.getMap(i)));
+      desiredGroupIds.add(group.getId());
+
+      if (!isChannelGroupUpToDate(currentGroups.get(group.getId()), group)) {
+        groupsToCreate.add(group);
+      }
+    }
+
+    Map<String, NotificationChannel> currentChannels = new HashMap<>();
+    for (NotificationChannel channel : ReactNativeFirebaseNotificationChannelSnapshot.getChannels(notificationManager)) {
+      currentChannels.put(channel.getId(), channel);
+    }
+
+    Set<String> desiredChannelIds = new HashSet<>();
+    List<NotificationChannel> channelsToCreate = new ArrayList<>();
+    int channelsCreated = 0;
+    for (int i = 0; i < channelsArray.size(); i++) {
+      NotificationChannel channel = parseChannelMap(Objects.requireNonNull(channelsArray.getMap(i)));
+      desiredChannelIds.add(channel.getId());
+
+      NotificationChannel current = currentChannels.get(channel.getId());
+      if (current == null) {
+        channelsToCreate.add(channel);
+        channelsCreated++;
+      } else if (!isChannelUpToDate(current, channel)) {
+        // only name, description and (unset) group of an existing channel can be changed
+        channelsToCreate.add(channel);
+      }
+    }
+
+    int groupsDeleted = 0;
+    int channelsDeleted = 0;
+    if (deleteUnknown) {
+      for (String channelId : currentChannels.keySet()) {
+        // the fallback channel is always kept, notifications without a channel are shown on it
+        if (!desiredChannelIds.contains(channelId) && !DEFAULT_CHANNEL_ID.equals(channelId)) {
+          notificationManager.deleteNotificationChannel(channelId);
+          convertedChannels.remove(channelId);
+          channelsDeleted++;
+        }
+      }
+
+      for (String groupId : currentGroups.keySet()) {
+        if (!desiredGroupIds.contains(groupId)) {
+          notificationManager.deleteNotificationChannelGroup(groupId);
+          groupsDeleted++;
+        }
+      }
+    }
+
+    if (!groupsToCreate.isEmpty()) {
+      notificationManager.createNotificationChannelGroups(groupsToCreate);
+    }
+
+    if (!channelsToCreate.isEmpty()) {
+      notificationManager.createNotificationChannels(channelsToCreate);
+    }
+
+    if (groupsDeleted > 0) onChannelGroupsDeleted();
+    ReactNativeFirebaseNotificationChannelSnapshot.invalidate();
+    preferences.edit().putString(SYNC_HASH_KEY, hash).apply();
+
+    result.putBoolean("skipped", false);
+    result.putInt("groupsCreated", groupsToCreate.size());
+    result.putInt("groupsDeleted", groupsDeleted);
+    result.putInt("channelsCreated", channelsCreated);
+    result.putInt("channelsUpdated", channelsToCreate.size() - channelsCreated);
+    result.putInt("channelsDeleted", channelsDeleted);
+    return result;
+  }
+
+  @RequiresApi(api = 26)
+  private static boolean channelsExist(NotificationManager notificationManager, ReadableArray channelsArray) {
+    Set<String> existingChannelIds = new HashSet<>();
+    for (NotificationChannel channel : notificationManager.getNotificationChannels()) {
+      existingChannelIds.add(channel.getId());
+    }
+
+    for (int i = 0; i < channelsArray.size(); i++) {
+      ReadableMap channelMap = Objects.requireNonNull(channelsArray.getMap(i));
+      if (!existingChannelIds.contains(channelMap.getString("channelId"))) return false;
+    }
+
+    return true;
+  }
+
+  @RequiresApi(api = 26)
+  private static boolean hasUnknownChannels(NotificationManager notificationManager, ReadableArray groupsArray, ReadableArray channelsArray) {
+    Set<String> channelIds = new HashSet<>();
+    for (int i = 0; i < channelsArray.size(); i++) {
+      channelIds.add(Objects.requireNonNull(channelsArray.getMap(i)).getString("channelId"));
+    }
+
+    for (NotificationChannel channel : ReactNativeFirebaseNotificationChannelSnapshot.getChannels(notificationManager)) {
+      if (!channelIds.contains(channel.getId()) && !DEFAULT_CHANNEL_ID.equals(channel.getId())) return true;
+    }
+
+    Set<String> groupIds = new HashSet<>();
+    for (int i = 0; i < groupsArray.size(); i++) {
+      groupIds.add(parseChannelGroupMap(Objects.requireNonNull(groupsArray.getMap(i))).getId());
+    }
+
+    for (NotificationChannelGroup group : ReactNativeFirebaseNotificationChannelSnapshot.getChannelGroups(notificationManager)) {
+      if (!groupIds.contains(group.getId())) return true;
+    }
+
+    return false;
+  }
+
+  /**
+   * NotificationChannelGroup.equals also compares the channels of the group, which the desired
+   * group never has.
+   */
+  @RequiresApi(api = 26)
+  private static boolean isChannelGroupUpToDate(@Nullable NotificationChannelGroup current, NotificationChannelGroup desired) {
+    if (current == null) return false;
+
+    return Objects.equals(current.getId(), desired.getId()) &&
+      Objects.equals(current.getName(), desired.getName()) &&
+      (Build.VERSION.SDK_INT < 28 || Objects.equals(current.getDescription(), desired.getDescription()));
+  }
+
+  @RequiresApi(api = 26)
+  private static boolean isChannelUpToDate(NotificationChannel current, NotificationChannel desired) {
+    return Objects.equals(current.getName(), desired.getName()) &&
+      Objects.equals(current.getDescription(), desired.getDescription()) &&
+      (desired.getGroup() == null || Objects.equals(current.getGroup(), desired.getGroup()));
+  }
+
+  /**
+   * A stable hash of a channel configuration, map keys are sorted so the hash doesn't depend
+   * on the order they were sent in.
+   */
+  private static String hashChannelConfig(ReadableArray groupsArray, ReadableArray channelsArray, boolean deleteUnknown) {
+    StringBuilder builder = new StringBuilder();
+    appendCanonical(builder, groupsArray.toArrayList());
+    appendCanonical(builder, channelsArray.toArrayList());
+    builder.append(deleteUnknown);
+
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      StringBuilder hash = new StringBuilder();
+      for (byte b : digest.digest(builder.toString().getBytes("UTF-8"))) {
+        hash.append(String.format("%02x", b));
+      }
+      return hash.toString();
+    } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+      return Integer.toHexString(builder.toString().hashCode());
+    }
+  }
+
+  private static void appendCanonical(StringBuilder builder, @Nullable Object value) {
+    if (value instanceof Map) {
+      builder.append('{');
+      for (Map.Entry<?, ?> entry : new TreeMap<>((Map<?, ?>) value).entrySet()) {
+        builder.append(entry.getKey()).append('=');
+        appendCanonical(builder, entry.getValue());
+        builder.append(',');
+      }
+      builder.append('}');
+    } else if (value instanceof List) {
+      builder.append('[');
+      for (Object item : (List<?>) value) {
+        appendCanonical(builder, item);
+        builder.append(',');
+      }
+      builder.append(']');
+    } else {
+      builder.append(value);
     }
   }
 
   static void deleteChannelGroup(String groupId) {
     if (Build.VERSION.SDK_INT >= 26) {
       getNotificationManager().deleteNotificationChannelGroup(groupId);
+      onChannelGroupsDeleted();
     }
   }
 
+  /**
+   * Deleting a group deletes its channels too, which ones isn't known here so everything
+   * cached about channels is dropped.
+   */
+  private static void onChannelGroupsDeleted() {
+    convertedChannels.clear();
+    ReactNativeFirebaseNotificationChannelSnapshot.invalidate();
+  }
+
   static void deleteChannel(String channelId) {
     if (Build.VERSION.SDK_INT >= 26) {
       getNotificationManager().deleteNotificationChannel(channelId);
+      convertedChannels.remove(channelId);
+      ReactNativeFirebaseNotificationChannelSnapshot.invalidate();
     }
   }
 
@@ -189,9 +471,28 @@ class ReactNativeFirebaseNotificationChannel {
     return writableMap;
   }
 
+  /**
+   * Converts a channel for JS. Conversions are cached per channel id and reused while the
+   * channel is equal to the one converted and the sound name is still fresh; a copy is
+   * returned as maps passed to JS are consumed.
+   */
   @RequiresApi(api = 26)
   private static WritableMap createChannelMap(NotificationChannel notificationChannel) {
     if (notificationChannel == null) return null;
+
+    ConvertedChannel converted = convertedChannels.get(notificationChannel.getId());
+    if (converted == null || !converted.isValidFor(notificationChannel)) {
+      converted = new ConvertedChannel(notificationChannel, convertChannel(notificationChannel));
+      convertedChannels.put(notificationChannel.getId(), converted);
+    }
+
+    WritableMap writableMap = Arguments.createMap();
+    writableMap.merge(converted.map);
+    return writableMap;
+  }
+
+  @RequiresApi(api = 26)
+  private static WritableMap convertChannel(NotificationChannel notificationChannel) {
     WritableMap writableMap = Arguments.createMap();
 
     if (Build.VERSION.SDK_INT >= 26) {
@@ -233,6 +534,23 @@ class ReactNativeFirebaseNotificationChannel {
     return writableMap;
   }
 
+  private static class ConvertedChannel {
+    final NotificationChannel channel;
+    final WritableMap map;
+    final long convertedAt;
+
+    ConvertedChannel(NotificationChannel channel, WritableMap map) {
+      this.channel = channel;
+      this.map = map;
+      this.convertedAt = SystemClock.elapsedRealtime();
+    }
+
+    boolean isValidFor(NotificationChannel notificationChannel) {
+      return SystemClock.elapsedRealtime() - convertedAt < ReactNativeFirebaseNotificationUtils.FILE_NAME_MAX_AGE &&
+        channel.equals(notificationChannel);
+    }
+  }
+
   @RequiresApi(api = 26)
   private static NotificationChannel parseChannelMap(ReadableMap channelMap) {
     if (Build.VERSION.SDK_INT >= 26) {
@@ -250,13 +568,16 @@ class ReactNativeFirebaseNotificationChannel {
         channel.setDescription(channelMap.getString("description"));
       }
 
-      if (channelMap.hasKey("group")) {
+      // JS sends groupId, group is accepted for older callers
+      if (channelMap.hasKey("groupId")) {
+        channel.setGroup(channelMap.getString("groupId"));
+      } else if (channelMap.hasKey("group")) {
         channel.setGroup(channelMap.getString("group"));
       }
 
       if (channelMap.hasKey("lightColor")) {
         String lightColor = channelMap.getString("lightColor");
-        channel.setLightColor(Color.parseColor(lightColor));
+        channel.setLightColor(parseColor(lightColor));
       }
 
       if (channelMap.hasKey("lightsEnabled")) {
@@ -298,7 +619,10 @@ class ReactNativeFirebaseNotificationChannel {
   @RequiresApi(api = 26)
   private static NotificationChannelGroup parseChannelGroupMap(ReadableMap channelGroupMap) {
     if (Build.VERSION.SDK_INT >= 26) {
-      String groupId = channelGroupMap.getString("groupId");
+      // JS sends channelGroupId, groupId is accepted for older callers
+      String groupId = channelGroupMap.hasKey("channelGroupId") ?
+        channelGroupMap.getString("channelGroupId") :
+        channelGroupMap.getString("groupId");
       String name = channelGroupMap.getString("name");
 
       NotificationChannelGroup notificationChannelGroup = new NotificationChannelGroup(
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2019-present Madhusudan Sapkota & Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this library except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.invertase.firebase.notifications;
+
+import android.app.NotificationChannel;
+import android.app.NotificationChannelGroup;
+import android.app.NotificationManager;
+import android.os.SystemClock;
+
+import androidx.annotation.RequiresApi;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import io.invertase.firebase.common.ReactNativeFirebaseJSON;
+
+/**
+ * A versioned in-memory copy of the app's notification channels and channel groups.
+ *
+ * The snapshot is reloaded from the NotificationManager once it is older than the max age,
+ * or on the next read after this module changed the channels or the app came back to the
+ * foreground, which is where the user changes channels in the system settings. Every reload
+ * that finds an added, removed or changed channel bumps the version, and each channel
+ * remembers the version it last changed at, so callers can ask for just what changed since a
+ * version they have seen.
+ *
+ * Versions handed out combine the version with an epoch picked per process, a version from
+ * an earlier process doesn't belong to this snapshot and gets a reset.
+ */
+@RequiresApi(api = 26)
+class ReactNativeFirebaseNotificationChannelSnapshot {
+  // changes made in the system settings while the app is visible are picked up within this time
+  private static final String MAX_AGE_JSON_KEY = "notification_android_channel_snapshot_max_age";
+  private static final long MAX_AGE_DEFAULT = 30000;
+  private static final int MAX_REMOVED_CHANNELS = 256;
+
+  // versions handed out are epoch * VERSION_RANGE + version, which stays well within the
+  // integers a JS number holds exactly
+  private static final long VERSION_RANGE = 1L << 22;
+  private static final int MAX_EPOCH = 1 << 30;
+
+  private static final Map<String, Entry> channels = new LinkedHashMap<>();
+  // removed channel ids and the version they were removed at, oldest first
+  private static final LinkedHashMap<String, Long> removedChannels = new LinkedHashMap<>();
+  private static List<NotificationChannelGroup> channelGroups = new ArrayList<>();
+
+  private static long epoch = newEpoch();
+  private static long version = 0;
+  // removals at or before this version may have been forgotten
+  private static long forgottenVersion = 0;
+  private static long refreshedAt;
+  private static boolean stale = true;
+
+  /**
+   * Marks the snapshot as out of date, called whenever this module changes the channels.
+   */
+  static synchronized void invalidate() {
+    stale = true;
+  }
+
+  static synchronized List<NotificationChannel> getChannels(NotificationManager notificationManager) {
+    refresh(notificationManager);
+
+    List<NotificationChannel> result = new ArrayList<>(channels.size());
+    for (Entry entry : channels.values()) {
+      result.add(entry.channel);
+    }
+
+    return result;
+  }
+
+  static synchronized List<NotificationChannelGroup> getChannelGroups(NotificationManager notificationManager) {
+    refresh(notificationManager);
+    return new ArrayList<>(channelGroups);
+  }
+
+  /**
+   * Returns the channels added or changed, and the ids of the channels removed, after the
+   * given version. If removals that old are no longer known, or the version is from another
+   * process, the delta is a reset: it contains every channel and the caller should replace
+   * its copy.
+   */
+  static synchronized Delta getChannelsSince(NotificationManager notificationManager, long sinceToken) {
+    refresh(notificationManager);
+
+    long sinceVersion = sinceToken % VERSION_RANGE;
+    boolean reset = sinceToken / VERSION_RANGE != epoch || sinceVersion < forgottenVersion || sinceVersion > version;
+    List<NotificationChannel> changed = new ArrayList<>();
+    for (Entry entry : channels.values()) {
+      if (reset || entry.version > sinceVersion) changed.add(entry.channel);
+    }
+
+    List<String> removed = new ArrayList<>();
+    if (!reset) {
+      for (Map.Entry<String, Long> removedChannel : removedChannels.entrySet()) {
+        if (removedChannel.getValue() > sinceVersion) removed.add(removedChannel.getKey());
+      }
+    }
+
+    return new Delta(epoch * VERSION_RANGE + version, reset, changed, removed);
+  }
+
+  private static long newEpoch() {
+    // never 0, so the initial version 0 always gets a reset
+    return 1 + new Random().nextInt(MAX_EPOCH - 1);
+  }
+
+  private static void refresh(NotificationManager notificationManager) {
+    long now = SystemClock.elapsedRealtime();
+    long maxAge = ReactNativeFirebaseJSON.getSharedInstance().getLongValue(MAX_AGE_JSON_KEY, MAX_AGE_DEFAULT);
+    if (!stale && now - refreshedAt < maxAge) return;
+
+    List<NotificationChannel> notificationChannels = notificationManager.getNotificationChannels();
+    channelGroups = notificationManager.getNotificationChannelGroups();
+
+    long nextVersion = version + 1;
+    boolean changed = false;
+    Set<String> channelIds = new HashSet<>();
+
+    for (NotificationChannel notificationChannel : notificationChannels) {
+      String channelId = notificationChannel.getId();
+      channelIds.add(channelId);
+
+      Entry entry = channels.get(channelId);
+      if (entry == null || !entry.channel.equals(notificationChannel)) {
+        channels.put(channelId, new Entry(notificationChannel, nextVersion));
+        removedChannels.remove(channelId);
+        changed = true;
+      }
+    }
+
+    Iterator<String> iterator = channels.keySet().iterator();
+    while (iterator.hasNext()) {
+      String channelId = iterator.next();
+      if (!channelIds.contains(channelId)) {
+        iterator.remove();
+        removedChannels.put(channelId, nextVersion);
+        changed = true;
+      }
+    }
+
+    Iterator<Map.Entry<String, Long>> removedIterator = removedChannels.entrySet().iterator();
+    while (removedChannels.size() > MAX_REMOVED_CHANNELS && removedIterator.hasNext()) {
+      forgottenVersion = Math.max(forgottenVersion, removedIterator.next().getValue());
+      removedIterator.remove();
+    }
+
+    if (changed) version = nextVersion;
+    if (version >= VERSION_RANGE) {
+      // out of versions, start a new epoch, callers get a reset next time
+      epoch = newEpoch();
+      version = 1;
+      forgottenVersion = 0;
+      removedChannels.clear();
+      for (Map.Entry<String, Entry> entry : channels.entrySet()) {
+        entry.setValue(new Entry(entry.getValue().channel, version));
+      }
+    }
+    refreshedAt = now;
+    stale = false;
+  }
+
+  private static class Entry {
+    final NotificationChannel channel;
+    // the version this channel was last added or changed at
+    final long version;
+
+    Entry(NotificationChannel channel, long version) {
+      this.channel = channel;
+      this.version = version;
+    }
+  }
+
+  static class Delta {
+    final long version;
+    final boolean reset;
+    final List<NotificationChannel> changed;
+    final List<String> removed;
+
+    Delta(long version, boolean reset, List<NotificationChannel> changed, List<String> removed) {
+      this.version = version;
+      this.reset = reset;
+      this.changed = changed;
+      this.removed = removed;
+    }
+  }
+}
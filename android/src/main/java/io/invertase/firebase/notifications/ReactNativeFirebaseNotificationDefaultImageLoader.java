@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2019-present Madhusudan Sapkota & Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this library except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.invertase.firebase.notifications;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import io.invertase.firebase.notifications.ReactNativeFirebaseNotificationBitmapCache.CachedBitmap;
+import io.invertase.firebase.notifications.ReactNativeFirebaseNotificationBitmapCache.DiskEntry;
+
+import static io.invertase.firebase.notifications.ReactNativeFirebaseNotificationUtils.getResourceIcon;
+
+/**
+ * Loads images with HttpURLConnection / BitmapFactory, backed by
+ * {@link ReactNativeFirebaseNotificationBitmapCache}.
+ */
+class ReactNativeFirebaseNotificationDefaultImageLoader implements ReactNativeFirebaseNotificationImageLoader {
+  private static final String TAG = "RNFNotificationImages";
+
+  private final int connectTimeout;
+  private final int readTimeout;
+
+  ReactNativeFirebaseNotificationDefaultImageLoader(int connectTimeout, int readTimeout) {
+    this.connectTimeout = connectTimeout;
+    this.readTimeout = readTimeout;
+  }
+
+  @Override
+  public @Nullable
+  Bitmap loadBitmap(Context context, String image, int width, int height, long maxBytes) {
+    String key = ReactNativeFirebaseNotificationBitmapCache.getKey(getVersionedImage(image), width, height);
+    CachedBitmap cached = ReactNativeFirebaseNotificationBitmapCache.getBitmap(key);
+    if (cached != null && cached.isFresh()) {
+      return cached.bitmap;
+    }
+
+    if (image.startsWith("http://") || image.startsWith("https://")) {
+      return getBitmapFromHttpUrl(image, key, cached, width, height, maxBytes);
+    }
+
+    Bitmap bitmap;
+    if (image.startsWith("file://")) {
+      bitmap = ReactNativeFirebaseNotificationBitmapDecoder.decodeFile(image.replace("file://", ""), width, height, maxBytes);
+    } else {
+      bitmap = ReactNativeFirebaseNotificationBitmapDecoder.decodeResource(
+        context.getResources(),
+        getResourceIcon(image),
+        width,
+        height,
+        maxBytes
+      );
+    }
+
+    // files are keyed by their version and resources can't change, so neither expires
+    if (bitmap != null) {
+      ReactNativeFirebaseNotificationBitmapCache.putBitmap(key, bitmap, Long.MAX_VALUE);
+    }
+
+    return bitmap;
+  }
+
+  /**
+   * A file is cached together with its modification time and size, so a file rewritten at the
+   * same path is decoded again instead of showing the old image.
+   */
+  private static String getVersionedImage(String image) {
+    if (!image.startsWith("file://")) return image;
+
+    File file = new File(image.replace("file://", ""));
+    return image + "#" + file.lastModified() + ":" + file.length();
+  }
+
+  private @Nullable
+  Bitmap getBitmapFromHttpUrl(
+    String httpUrl,
+    String key,
+    @Nullable CachedBitmap cached,
+    int width,
+    int height,
+    long maxBytes
+  ) {
+    DiskEntry entry = ReactNativeFirebaseNotificationBitmapCache.getDiskEntry(httpUrl);
+    boolean modified = !entry.isFresh() && downloadToDiskCache(httpUrl, entry);
+
+    if (!entry.exists()) return null;
+
+    // the cached copy is still current, avoid decoding it again
+    if (!modified && cached != null) {
+      ReactNativeFirebaseNotificationBitmapCache.putBitmap(key, cached.bitmap, entry.getExpiresAt());
+      return cached.bitmap;
+    }
+
+    Bitmap bitmap = ReactNativeFirebaseNotificationBitmapDecoder.decodeFile(entry.file.getPath(), width, height, maxBytes);
+    if (bitmap != null) {
+      ReactNativeFirebaseNotificationBitmapCache.putBitmap(key, bitmap, entry.getExpiresAt());
+    }
+
+    return bitmap;
+  }
+
+  /**
+   * Downloads an image into the disk cache, revalidating any existing copy with its
+   * ETag / Last-Modified. A stale copy is kept (and used) if the request fails, e.g. offline.
+   *
+   * @return true if the cached copy was replaced
+   */
+  private boolean downloadToDiskCache(String httpUrl, DiskEntry entry) {
+    HttpURLConnection connection = null;
+    InputStream inputStream = null;
+
+    try {
+      connection = (HttpURLConnection) new URL(httpUrl).openConnection();
+      connection.setConnectTimeout(connectTimeout);
+      connection.setReadTimeout(readTimeout);
+      connection.setDoInput(true);
+
+      if (entry.exists()) {
+        if (entry.getETag() != null) {
+          connection.setRequestProperty("If-None-Match", entry.getETag());
+        }
+
+        if (entry.getLastModified() != null) {
+          connection.setRequestProperty("If-Modified-Since", entry.getLastModified());
+        }
+      }
+
+      connection.connect();
+      int responseCode = connection.getResponseCode();
+
+      if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && entry.exists()) {
+        entry.markValidated();
+        return false;
+      }
+
+      if (responseCode != HttpURLConnection.HTTP_OK) {
+        Log.e(TAG, "Failed to get bitmap for url: " + httpUrl + ", status " + responseCode);
+        return false;
+      }
+
+      inputStream = connection.getInputStream();
+      entry.write(inputStream, connection.getHeaderField("ETag"), connection.getHeaderField("Last-Modified"));
+      return true;
+    } catch (IOException e) {
+      Log.e(TAG, "Failed to get bitmap for url: " + httpUrl, e);
+      return false;
+    } finally {
+      if (inputStream != null) {
+        try {
+          inputStream.close();
+        } catch (IOException ignore) {
+        }
+      }
+
+      if (connection != null) connection.disconnect();
+    }
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2019-present Madhusudan Sapkota & Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this library except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.invertase.firebase.notifications;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.net.Uri;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.common.executors.CallerThreadExecutor;
+import com.facebook.common.references.CloseableReference;
+import com.facebook.common.util.UriUtil;
+import com.facebook.datasource.BaseDataSubscriber;
+import com.facebook.datasource.DataSource;
+import com.facebook.drawee.backends.pipeline.Fresco;
+import com.facebook.imagepipeline.common.ResizeOptions;
+import com.facebook.imagepipeline.image.CloseableBitmap;
+import com.facebook.imagepipeline.image.CloseableImage;
+import com.facebook.imagepipeline.request.ImageRequest;
+import com.facebook.imagepipeline.request.ImageRequestBuilder;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+
+import static io.invertase.firebase.notifications.ReactNativeFirebaseNotificationUtils.getResourceIcon;
+
+/**
+ * Loads images through the host app's Fresco image pipeline, sharing its memory / disk caches
+ * and bitmap pools with React Native's own images. Enabled by setting the firebase.json
+ * `notification_android_image_loader` key to "fresco".
+ */
+class ReactNativeFirebaseNotificationFrescoImageLoader implements ReactNativeFirebaseNotificationImageLoader {
+
+  static boolean isAvailable() {
+    try {
+      return Fresco.hasBeenInitialized();
+    } catch (NoClassDefFoundError e) {
+      return false;
+    }
+  }
+
+  @Override
+  public @Nullable
+  Bitmap loadBitmap(Context context, String image, int width, int height, long maxBytes) throws Exception {
+    try {
+      return fetchBitmap(image, width, height, maxBytes);
+    } catch (LinkageError e) {
+      // the app bundles a Fresco version without the pipeline API used here
+      throw new Exception("Fresco image pipeline is not usable, failed to load " + image, e);
+    }
+  }
+
+  private static @Nullable
+  Bitmap fetchBitmap(String image, int width, int height, long maxBytes) throws Exception {
+    ImageRequestBuilder requestBuilder = ImageRequestBuilder.newBuilderWithSource(getUri(image));
+    if (width > 0 && height > 0) {
+      requestBuilder.setResizeOptions(new ResizeOptions(width, height));
+    }
+
+    ImageRequest request = requestBuilder.build();
+    DataSource<CloseableReference<CloseableImage>> dataSource = Fresco.getImagePipeline().fetchDecodedImage(request, null);
+    CloseableReference<CloseableImage> imageReference = null;
+
+    try {
+      imageReference = waitForFinalResult(dataSource);
+      if (imageReference == null || !(imageReference.get() instanceof CloseableBitmap)) return null;
+
+      // the pooled bitmap is reused once the reference closes, hand out a copy instead
+      Bitmap bitmap = ((CloseableBitmap) imageReference.get()).getUnderlyingBitmap();
+      return copyWithinLimit(bitmap, maxBytes);
+    } finally {
+      CloseableReference.closeSafely(imageReference);
+      dataSource.close();
+    }
+  }
+
+  /**
+   * Blocks until the data source finishes. Unlike DataSources.waitForFinalResult, which
+   * throws Throwable, a failure is rethrown as an IOException with its cause.
+   */
+  private static @Nullable
+  CloseableReference<CloseableImage> waitForFinalResult(DataSource<CloseableReference<CloseableImage>> dataSource) throws Exception {
+    CountDownLatch finished = new CountDownLatch(1);
+    dataSource.subscribe(new BaseDataSubscriber<CloseableReference<CloseableImage>>() {
+      @Override
+      protected void onNewResultImpl(DataSource<CloseableReference<CloseableImage>> dataSource) {
+        if (dataSource.isFinished()) finished.countDown();
+      }
+
+      @Override
+      protected void onFailureImpl(DataSource<CloseableReference<CloseableImage>> dataSource) {
+        finished.countDown();
+      }
+
+      @Override
+      public void onCancellation(DataSource<CloseableReference<CloseableImage>> dataSource) {
+        finished.countDown();
+      }
+    }, CallerThreadExecutor.getInstance());
+
+    finished.await();
+    if (dataSource.hasFailed()) {
+      throw new IOException("Fresco failed to load the image", dataSource.getFailureCause());
+    }
+
+    return dataSource.getResult();
+  }
+
+  private static Uri getUri(String image) {
+    if (image.startsWith("http://") || image.startsWith("https://") || image.startsWith("file://")) {
+      return Uri.parse(image);
+    }
+
+    return UriUtil.getUriForResourceId(getResourceIcon(image));
+  }
+
+  private static @Nullable
+  Bitmap copyWithinLimit(Bitmap bitmap, long maxBytes) {
+    long byteCount = bitmap.getByteCount();
+    if (maxBytes <= 0 || byteCount <= maxBytes) {
+      return bitmap.copy(bitmap.getConfig(), false);
+    }
+
+    double scale = Math.sqrt((double) maxBytes / byteCount);
+    int width = Math.max(1, (int) (bitmap.getWidth() * scale));
+    int height = Math.max(1, (int) (bitmap.getHeight() * scale));
+    Bitmap scaled = Bitmap.createScaledBitmap(bitmap, width, height, true);
+    return scaled == bitmap ? bitmap.copy(bitmap.getConfig(), false) : scaled;
+  }
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright (c) 2019-present Madhusudan Sapkota & Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this library except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.invertase.firebase.notifications;
+
+import android.app.NotificationManager;
+import android.content.Context;
+import android.graphics.Typeface;
+import android.os.Build;
+import android.os.SystemClock;
+import android.service.notification.StatusBarNotification;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.style.StyleSpan;
+import android.util.LruCache;
+
+import androidx.annotation.Nullable;
+import androidx.core.app.NotificationCompat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import io.invertase.firebase.common.ReactNativeFirebaseJSON;
+
+import static io.invertase.firebase.app.ReactNativeFirebaseApp.getApplicationContext;
+
+/**
+ * Keeps an InboxStyle summary up to date for every notification group, so JS doesn't have to
+ * rebuild and re-post the summary after each child. The active children of each group are
+ * tracked natively and the summary, showing the number of children and the latest lines, is
+ * only re-posted when what it shows has changed.
+ *
+ * Groups for which the app posts its own summary (groupSummary: true) are left alone.
+ *
+ * Opt-in through notification_android_group_summaries, and only on API 24+ where the summary
+ * is folded into the group instead of being shown as a notification of its own.
+ */
+class ReactNativeFirebaseNotificationGroupSummaries {
+  private static final String ENABLED_JSON_KEY = "notification_android_group_summaries";
+  private static final String LINES_JSON_KEY = "notification_android_group_summary_lines";
+  private static final long LINES_DEFAULT = 5;
+
+  // groups the app posted its own summary for, the least recent are forgotten past this
+  private static final int MAX_APP_MANAGED_GROUPS = 64;
+
+  // children posted this recently may still be waiting in the post queue
+  private static final long INACTIVE_GRACE_MS = 10000;
+
+  private static final Map<String, Group> groups = new HashMap<>();
+  private static final LruCache<String, Boolean> appManagedGroups = new LruCache<>(MAX_APP_MANAGED_GROUPS);
+
+  private static boolean isEnabled() {
+    return Build.VERSION.SDK_INT >= 24 && ReactNativeFirebaseJSON.getSharedInstance().getBooleanValue(ENABLED_JSON_KEY, false);
+  }
+
+  /**
+   * Records a posted notification and, if it is a child of a group, updates the group summary.
+   */
+  static void onNotificationPosted(ReactNativeFirebaseNotificationSpec spec, String channelId, @Nullable String tag, int id) {
+    String groupKey = spec.android.group;
+    if (groupKey == null || !isEnabled()) return;
+
+    Group group;
+    synchronized (groups) {
+      if (spec.android.hasGroupSummary() && spec.android.groupSummary) {
+        appManagedGroups.put(groupKey, true);
+        group = groups.remove(groupKey);
+        if (group == null || group.postedSignature == null) return;
+      } else if (appManagedGroups.get(groupKey) != null) {
+        return;
+      } else {
+        group = null;
+      }
+    }
+
+    // the app's summary replaces the one posted for it so far
+    if (group != null) {
+      ReactNativeFirebaseNotificationPostQueue.cancel(null, getSummaryId(group.key));
+      return;
+    }
+
+    synchronized (groups) {
+      group = groups.get(groupKey);
+      if (group == null) {
+        group = new Group(groupKey);
+        groups.put(groupKey, group);
+      }
+
+      String childKey = getChildKey(tag, id);
+      group.children.remove(childKey);
+      group.children.put(childKey, new Child(getLine(spec), SystemClock.elapsedRealtime()));
+      group.channelId = channelId;
+      group.smallIcon = spec.android.smallIcon;
+      if (spec.android.hasColor()) group.color = spec.android.color;
+
+      removeInactiveChildren(group);
+    }
+
+    updateSummary(group);
+  }
+
+  /**
+   * Removes a cancelled notification from its group, updating the group summary or cancelling
+   * it with the last child.
+   */
+  static void onNotificationCancelled(@Nullable String tag, int id) {
+    String childKey = getChildKey(tag, id);
+    List<Group> updated = new ArrayList<>();
+
+    synchronized (groups) {
+      for (Group group : groups.values()) {
+        if (group.children.remove(childKey) != null) updated.add(group);
+      }
+    }
+
+    for (Group group : updated) {
+      updateSummary(group);
+    }
+  }
+
+  /**
+   * Forgets all groups, their summaries were cancelled along with every other notification.
+   */
+  static void onAllNotificationsCancelled() {
+    synchronized (groups) {
+      groups.clear();
+      appManagedGroups.evictAll();
+    }
+  }
+
+  private static void updateSummary(Group group) {
+    NotificationCompat.Builder builder;
+
+    synchronized (groups) {
+      if (group.children.isEmpty()) {
+        if (groups.get(group.key) == group) groups.remove(group.key);
+        if (group.postedSignature == null) return;
+        group.postedSignature = null;
+        builder = null;
+      } else {
+        // a summary is only posted once there are two children, but kept for the last one
+        if (group.children.size() < 2 && group.postedSignature == null) return;
+        builder = buildSummary(group);
+        if (builder == null) return;
+      }
+    }
+
+    if (builder == null) {
+      ReactNativeFirebaseNotificationPostQueue.cancel(null, getSummaryId(group.key));
+    } else {
+      ReactNativeFirebaseNotificationPostQueue.post(null, getSummaryId(group.key), builder.build());
+    }
+  }
+
+  /**
+   * Returns the builder of the group summary, or null if the summary already shows this.
+   */
+  private static @Nullable NotificationCompat.Builder buildSummary(Group group) {
+    int maxLines = (int) Math.max(1, ReactNativeFirebaseJSON.getSharedInstance().getLongValue(LINES_JSON_KEY, LINES_DEFAULT));
+    List<CharSequence> lines = new ArrayList<>(group.children.size());
+    for (Child child : group.children.values()) {
+      lines.add(child.line);
+    }
+
+    List<CharSequence> latestLines = lines.subList(Math.max(0, lines.size() - maxLines), lines.size());
+
+    String signature = lines.size() + "\n" + group.channelId + "\n" + joinLines(latestLines);
+    if (signature.equals(group.postedSignature)) return null;
+    group.postedSignature = signature;
+
+    NotificationCompat.InboxStyle style = new NotificationCompat.InboxStyle();
+    // newest first
+    for (int i = latestLines.size() - 1; i >= 0; i--) {
+      style.addLine(latestLines.get(i));
+    }
+
+    int more = lines.size() - latestLines.size();
+    if (more > 0) style.setSummaryText("+" + more);
+
+    Context context = getApplicationContext();
+    int smallIcon = group.smallIcon != 0 ? group.smallIcon : context.getApplicationInfo().icon;
+
+    NotificationCompat.Builder builder = new NotificationCompat.Builder(context, group.channelId)
+      .setSmallIcon(smallIcon)
+      .setContentText(String.valueOf(lines.size()))
+      .setNumber(lines.size())
+      .setStyle(style)
+      .setGroup(group.key)
+      .setGroupSummary(true)
+      .setGroupAlertBehavior(NotificationCompat.GROUP_ALERT_CHILDREN)
+      .setOnlyAlertOnce(true)
+      .setAutoCancel(true);
+
+    if (group.color != null) builder.setColor(group.color);
+
+    return builder;
+  }
+
+  /**
+   * Drops children the user has dismissed, the active notifications are only available on API 23+.
+   */
+  private static void removeInactiveChildren(Group group) {
+    if (Build.VERSION.SDK_INT < 23) return;
+
+    NotificationManager notificationManager = (NotificationManager) getApplicationContext().getSystemService(Context.NOTIFICATION_SERVICE);
+    Set<String> active = new HashSet<>();
+    for (StatusBarNotification statusBarNotification : notificationManager.getActiveNotifications()) {
+      active.add(getChildKey(statusBarNotification.getTag(), statusBarNotification.getId()));
+    }
+
+    long now = SystemClock.elapsedRealtime();
+    Iterator<Map.Entry<String, Child>> iterator = group.children.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<String, Child> child = iterator.next();
+      if (now - child.getValue().postedAt > INACTIVE_GRACE_MS && !active.contains(child.getKey())) {
+        iterator.remove();
+      }
+    }
+  }
+
+  private static CharSequence getLine(ReactNativeFirebaseNotificationSpec spec) {
+    SpannableStringBuilder line = new SpannableStringBuilder();
+
+    if (spec.title != null) {
+      line.append(spec.title);
+      line.setSpan(new StyleSpan(Typeface.BOLD), 0, line.length(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+    }
+
+    if (spec.body != null) {
+      if (line.length() > 0) line.append("  ");
+      line.append(spec.body);
+    }
+
+    return line;
+  }
+
+  private static String joinLines(List<CharSequence> lines) {
+    StringBuilder builder = new StringBuilder();
+    for (CharSequence line : lines) {
+      builder.append(line).append('\n');
+    }
+    return builder.toString();
+  }
+
+  private static String getChildKey(@Nullable String tag, int id) {
+    return id + ":" + tag;
+  }
+
+  private static int getSummaryId(String groupKey) {
+    return ("group-summary:" + groupKey).hashCode();
+  }
+
+  private static class Group {
+    final String key;
+    // insertion ordered, the most recently posted child last
+    final LinkedHashMap<String, Child> children = new LinkedHashMap<>();
+    String channelId;
+    int smallIcon;
+    Integer color;
+    String postedSignature;
+
+    Group(String key) {
+      this.key = key;
+    }
+  }
+
+  private static class Child {
+    final CharSequence line;
+    final long postedAt;
+
+    Child(CharSequence line, long postedAt) {
+      this.line = line;
+      this.postedAt = postedAt;
+    }
+  }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2019-present Madhusudan Sapkota & Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this library except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.invertase.firebase.notifications;
+
+import android.graphics.Bitmap;
+import android.os.Process;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.invertase.firebase.common.ReactNativeFirebaseJSON;
+
+import static io.invertase.firebase.app.ReactNativeFirebaseApp.getApplicationContext;
+
+/**
+ * Loads notification images (largeIcon, BigPicture) on a dedicated, bounded thread pool so
+ * a slow image host never blocks the module executor that builds and posts notifications.
+ * The actual loading and decoding is delegated to a {@link ReactNativeFirebaseNotificationImageLoader}.
+ */
+class ReactNativeFirebaseNotificationImageFetcher {
+  private static final String TAG = "RNFNotificationImages";
+
+  private static final String POOL_SIZE_JSON_KEY = "notification_android_image_pool_size";
+  private static final String CONNECT_TIMEOUT_JSON_KEY = "notification_android_image_connect_timeout";
+  private static final String READ_TIMEOUT_JSON_KEY = "notification_android_image_read_timeout";
+  private static final String DEADLINE_JSON_KEY = "notification_android_image_deadline";
+  private static final String IMAGE_LOADER_JSON_KEY = "notification_android_image_loader";
+
+  private static final String IMAGE_LOADER_DEFAULT = "default";
+  private static final String IMAGE_LOADER_FRESCO = "fresco";
+
+  private static final long POOL_SIZE_DEFAULT = 3;
+  private static final long CONNECT_TIMEOUT_DEFAULT = 5000;
+  private static final long READ_TIMEOUT_DEFAULT = 10000;
+  private static final long DEADLINE_DEFAULT = 4000;
+
+  private static final int QUEUE_CAPACITY = 64;
+  private static final long KEEP_ALIVE_SECONDS = 30;
+
+  private static ThreadPoolExecutor executor;
+  private static ReactNativeFirebaseNotificationImageLoader imageLoader;
+  // used while the configured Fresco loader isn't available yet
+  private static ReactNativeFirebaseNotificationImageLoader defaultImageLoader;
+
+  private static final Map<String, Task<Bitmap>> inFlight = new HashMap<>();
+  private static final AtomicLong coalescedFetches = new AtomicLong();
+
+  private static synchronized ThreadPoolExecutor getThreadPool() {
+    if (executor == null) {
+      int poolSize = (int) Math.max(1, getJSONValue(POOL_SIZE_JSON_KEY, POOL_SIZE_DEFAULT));
+      executor = new ThreadPoolExecutor(
+        poolSize,
+        poolSize,
+        KEEP_ALIVE_SECONDS,
+        TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(QUEUE_CAPACITY),
+        new ImageThreadFactory()
+      );
+      executor.allowCoreThreadTimeOut(true);
+    }
+
+    return executor;
+  }
+
+  static Executor getExecutor() {
+    return getThreadPool();
+  }
+
+  /**
+   * The total time a notification waits for its images before it is shown without them.
+   */
+  static long getDeadline() {
+    return getJSONValue(DEADLINE_JSON_KEY, DEADLINE_DEFAULT);
+  }
+
+  /**
+   * Starts loading an image on the image pool. The returned task never fails; it resolves
+   * with null if the image could not be loaded or the pool is saturated.
+   *
+   * @param maxBytes the most the caller's bitmap may use, applied to the shared decode
+   */
+  static Task<Bitmap> fetch(String image, int target, long maxBytes) {
+    return limitBytes(fetch(image, target), maxBytes);
+  }
+
+  private static Task<Bitmap> fetch(String image, int target) {
+    int width = ReactNativeFirebaseNotificationBitmapDecoder.getTargetWidth(target);
+    int height = ReactNativeFirebaseNotificationBitmapDecoder.getTargetHeight(target);
+    String key = ReactNativeFirebaseNotificationBitmapCache.getKey(image, width, height);
+    // the largest any single notification may use, callers with less scale their result down
+    long maxBytes = ReactNativeFirebaseNotificationBitmapDecoder.getMaxBytesPerNotification();
+
+    Task<Bitmap> task;
+    synchronized (inFlight) {
+      // concurrent notifications referencing the same image at the same size share a single
+      // load & decode, whatever their byte budget
+      task = inFlight.get(key);
+      if (task != null) {
+        coalescedFetches.incrementAndGet();
+        return task;
+      }
+
+      try {
+        task = Tasks.call(getThreadPool(), () -> {
+          try {
+            return loadBitmap(image, width, height, maxBytes);
+          } catch (Exception e) {
+            Log.e(TAG, "Failed to load image: " + image, e);
+            return null;
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        Log.w(TAG, "Image queue is full, skipping image: " + image);
+        return Tasks.forResult(null);
+      }
+
+      inFlight.put(key, task);
+    }
+
+    Task<Bitmap> fetchTask = task;
+    fetchTask.addOnCompleteListener(Runnable::run, completed -> {
+      synchronized (inFlight) {
+        if (inFlight.get(key) == fetchTask) inFlight.remove(key);
+      }
+    });
+
+    return fetchTask;
+  }
+
+  private static Task<Bitmap> limitBytes(Task<Bitmap> task, long maxBytes) {
+    return task.continueWith(Runnable::run, completed -> {
+      Bitmap bitmap = completed.getResult();
+      return bitmap == null ? null : ReactNativeFirebaseNotificationBitmapDecoder.limitBytes(bitmap, maxBytes);
+    });
+  }
+
+  /**
+   * The number of image loads avoided by joining an identical load already in flight.
+   */
+  static long getCoalescedFetchCount() {
+    return coalescedFetches.get();
+  }
+
+  /**
+   * Blocks until the task completes or the timeout elapses.
+   *
+   * @return true if the task completed within the timeout
+   */
+  static boolean await(Task<?> task, long timeoutMs) {
+    if (task.isComplete()) return true;
+
+    try {
+      Tasks.await(task, Math.max(0, timeoutMs), TimeUnit.MILLISECONDS);
+      return true;
+    } catch (ExecutionException e) {
+      return true;
+    } catch (TimeoutException e) {
+      return false;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  /**
+   * Returns the result of a fetch if it has already completed, otherwise null.
+   */
+  static @Nullable
+  Bitmap getIfReady(@Nullable Task<Bitmap> task) {
+    if (task == null || !task.isSuccessful()) return null;
+    return task.getResult();
+  }
+
+  private static @Nullable
+  Bitmap loadBitmap(String image, int width, int height, long maxBytes) throws Exception {
+    return getImageLoader().loadBitmap(getApplicationContext(), image, width, height, maxBytes);
+  }
+
+  private static synchronized ReactNativeFirebaseNotificationImageLoader getImageLoader() {
+    if (imageLoader != null) return imageLoader;
+
+    String loader = ReactNativeFirebaseJSON.getSharedInstance().getStringValue(IMAGE_LOADER_JSON_KEY, IMAGE_LOADER_DEFAULT);
+
+    // e.g. a prefetch in a process started for a message, before React Native has set up
+    // Fresco; use the default loader until then without giving up on Fresco
+    if (IMAGE_LOADER_FRESCO.equals(loader) && !ReactNativeFirebaseNotificationFrescoImageLoader.isAvailable()) {
+      if (defaultImageLoader == null) {
+        Log.w(TAG, "Fresco is not initialized, using the default image loader until it is");
+        defaultImageLoader = createDefaultImageLoader();
+      }
+
+      return defaultImageLoader;
+    }
+
+    imageLoader = createImageLoader(loader);
+    return imageLoader;
+  }
+
+  /**
+   * Resolves the notification_android_image_loader firebase.json value: "default", "fresco",
+   * or the class name of a custom {@link ReactNativeFirebaseNotificationImageLoader}.
+   */
+  private static ReactNativeFirebaseNotificationImageLoader createImageLoader(String loader) {
+    if (IMAGE_LOADER_FRESCO.equals(loader)) {
+      return new ReactNativeFirebaseNotificationFrescoImageLoader();
+    } else if (!IMAGE_LOADER_DEFAULT.equals(loader)) {
+      try {
+        return (ReactNativeFirebaseNotificationImageLoader) Class.forName(loader).newInstance();
+      } catch (ClassNotFoundException | IllegalAccessException | InstantiationException | ClassCastException e) {
+        Log.e(TAG, "Failed to create image loader " + loader + ", falling back to the default image loader", e);
+      }
+    }
+
+    return createDefaultImageLoader();
+  }
+
+  private static ReactNativeFirebaseNotificationImageLoader createDefaultImageLoader() {
+    return new ReactNativeFirebaseNotificationDefaultImageLoader(
+      (int) getJSONValue(CONNECT_TIMEOUT_JSON_KEY, CONNECT_TIMEOUT_DEFAULT),
+      (int) getJSONValue(READ_TIMEOUT_JSON_KEY, READ_TIMEOUT_DEFAULT)
+    );
+  }
+
+  private static long getJSONValue(String key, long defaultValue) {
+    return ReactNativeFirebaseJSON.getSharedInstance().getLongValue(key, defaultValue);
+  }
+
+  private static class ImageThreadFactory implements ThreadFactory {
+    private final AtomicInteger count = new AtomicInteger(1);
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      return new Thread(() -> {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        runnable.run();
+      }, TAG + "-" + count.getAndIncrement());
+    }
+  }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2019-present Madhusudan Sapkota & Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this library except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.invertase.firebase.notifications;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Loads the images notifications display (largeIcon, BigPicture). Images are either
+ * http(s):// urls, file:// paths or the name of a mipmap / drawable resource.
+ *
+ * A custom implementation can be used by setting the firebase.json
+ * `notification_android_image_loader` key to its class name; it requires a public
+ * no-argument constructor.
+ */
+public interface ReactNativeFirebaseNotificationImageLoader {
+
+  /**
+   * Called on a background thread, may block until the image has loaded.
+   *
+   * @param width    the width the image is displayed at, in pixels
+   * @param height   the height the image is displayed at, in pixels
+   * @param maxBytes the maximum size the decoded bitmap should use, or 0 for no limit
+   * @return the decoded bitmap or null if the image could not be loaded
+   */
+  @Nullable
+  Bitmap loadBitmap(Context context, String image, int width, int height, long maxBytes) throws Exception;
+}
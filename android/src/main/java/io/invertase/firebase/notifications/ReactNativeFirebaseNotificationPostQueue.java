@@ -0,0 +1,348 @@
+/*
+ * Copyright (c) 2019-present Madhusudan Sapkota & Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this library except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.invertase.firebase.notifications;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.core.app.NotificationManagerCompat;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.invertase.firebase.common.ReactNativeFirebaseJSON;
+
+import static io.invertase.firebase.app.ReactNativeFirebaseApp.getApplicationContext;
+
+/**
+ * The single place notifications are handed to the system. Posts are limited app-wide by a
+ * token bucket so bursts stay under the OS rate limit, which otherwise drops posts
+ * arbitrarily. Posts over the limit wait in a queue ordered by channel importance (API 26+)
+ * and then notification priority, so important notifications go out first. The queue is
+ * bounded by count and by the bytes of the bitmaps its notifications hold; when it is full
+ * the lowest ranked post is dropped, preferring posts holding images when over the byte
+ * bound.
+ */
+class ReactNativeFirebaseNotificationPostQueue {
+  private static final String TAG = "RNFNotificationPosts";
+
+  private static final String POSTS_PER_SECOND_JSON_KEY = "notification_android_posts_per_second";
+  private static final String POST_BURST_JSON_KEY = "notification_android_post_burst";
+  private static final String QUEUE_SIZE_JSON_KEY = "notification_android_post_queue_size";
+  private static final String QUEUE_BYTES_JSON_KEY = "notification_android_post_queue_bytes";
+
+  // the platform allows a few posts per second per app before it starts dropping them
+  private static final long POSTS_PER_SECOND_DEFAULT = 4;
+  private static final long POST_BURST_DEFAULT = 5;
+  private static final long QUEUE_SIZE_DEFAULT = 100;
+  private static final long QUEUE_BYTES_DEFAULT = 24 * 1024 * 1024;
+
+  private static final Handler handler = new Handler(Looper.getMainLooper());
+  private static final Runnable drain = ReactNativeFirebaseNotificationPostQueue::drain;
+
+  private static final PriorityQueue<Post> queue = new PriorityQueue<>();
+  private static final Map<String, Post> queued = new HashMap<>();
+  // importance of the channels of queued posts, dropped once the queue has drained
+  private static final Map<String, Integer> channelImportance = new HashMap<>();
+  private static final AtomicLong droppedPosts = new AtomicLong();
+
+  private static boolean initialized = false;
+  private static double tokens;
+  private static double tokensPerMs;
+  private static int burst;
+  private static int maxQueueSize;
+  private static long maxQueueBytes;
+  private static long queuedBytes;
+  private static long refilledAt;
+  private static long sequence;
+  private static boolean drainScheduled = false;
+
+  private static void initialize() {
+    if (initialized) return;
+    ReactNativeFirebaseJSON json = ReactNativeFirebaseJSON.getSharedInstance();
+
+    tokensPerMs = Math.max(1, json.getLongValue(POSTS_PER_SECOND_JSON_KEY, POSTS_PER_SECOND_DEFAULT)) / 1000d;
+    burst = (int) Math.max(1, json.getLongValue(POST_BURST_JSON_KEY, POST_BURST_DEFAULT));
+    maxQueueSize = (int) Math.max(1, json.getLongValue(QUEUE_SIZE_JSON_KEY, QUEUE_SIZE_DEFAULT));
+    maxQueueBytes = Math.max(0, json.getLongValue(QUEUE_BYTES_JSON_KEY, QUEUE_BYTES_DEFAULT));
+    tokens = burst;
+    refilledAt = SystemClock.elapsedRealtime();
+    initialized = true;
+  }
+
+  /**
+   * Posts the notification now if the rate limit allows it, otherwise queues it. A queued
+   * post for the same notification (id & tag) is replaced, keeping its place in the queue.
+   * A notification posted right away which the system rejects, e.g. without a valid small
+   * icon, throws; failures of queued posts can only be logged.
+   */
+  static void post(@Nullable String tag, int id, Notification notification) {
+    synchronized (queue) {
+      initialize();
+      String key = id + ":" + tag;
+
+      Post previous = queued.remove(key);
+      if (previous != null) {
+        remove(previous);
+      }
+
+      if (previous != null || !queue.isEmpty() || !takeToken()) {
+        Post post = new Post(
+          key, tag, id, notification, getImportance(notification), getImageBytes(notification),
+          previous != null ? previous.sequence : sequence++
+        );
+        queue.add(post);
+        queued.put(key, post);
+        queuedBytes += post.imageBytes;
+
+        while (queue.size() > maxQueueSize || (queuedBytes > maxQueueBytes && queuedBytes > 0)) {
+          Post dropped = removeLowestRanked(queue.size() <= maxQueueSize);
+          queued.remove(dropped.key);
+          droppedPosts.incrementAndGet();
+          Log.w(TAG, "Notification queue is full, dropping notification " + dropped.id);
+        }
+
+        scheduleDrain();
+        return;
+      }
+    }
+
+    NotificationManagerCompat.from(getApplicationContext()).notify(tag, id, notification);
+  }
+
+  /**
+   * Cancels the notification, dropping a post of it still waiting in the queue.
+   */
+  static void cancel(@Nullable String tag, int id) {
+    synchronized (queue) {
+      Post previous = queued.remove(id + ":" + tag);
+      if (previous != null) remove(previous);
+    }
+
+    NotificationManagerCompat.from(getApplicationContext()).cancel(tag, id);
+  }
+
+  /**
+   * Cancels all notifications, dropping any queued posts.
+   */
+  static void cancelAll() {
+    synchronized (queue) {
+      queue.clear();
+      queued.clear();
+      channelImportance.clear();
+      queuedBytes = 0;
+    }
+
+    NotificationManagerCompat.from(getApplicationContext()).cancelAll();
+  }
+
+  /**
+   * The number of posts waiting for the rate limit.
+   */
+  static int getQueueDepth() {
+    synchronized (queue) {
+      return queue.size();
+    }
+  }
+
+  /**
+   * The number of posts dropped because the queue was full.
+   */
+  static long getDroppedCount() {
+    return droppedPosts.get();
+  }
+
+  private static void drain() {
+    while (true) {
+      Post post;
+
+      synchronized (queue) {
+        drainScheduled = false;
+        if (queue.isEmpty()) {
+          channelImportance.clear();
+          return;
+        }
+
+        if (!takeToken()) {
+          scheduleDrain();
+          return;
+        }
+
+        post = queue.poll();
+        queued.remove(post.key);
+        queuedBytes -= post.imageBytes;
+      }
+
+      notify(post.tag, post.id, post.notification);
+    }
+  }
+
+  private static boolean takeToken() {
+    long now = SystemClock.elapsedRealtime();
+    tokens = Math.min(burst, tokens + (now - refilledAt) * tokensPerMs);
+    refilledAt = now;
+
+    if (tokens < 1) return false;
+    tokens -= 1;
+    return true;
+  }
+
+  private static void scheduleDrain() {
+    if (drainScheduled) return;
+    drainScheduled = true;
+
+    long delay = (long) Math.ceil(Math.max(0, 1 - tokens) / tokensPerMs);
+    handler.postDelayed(drain, delay);
+  }
+
+  private static void remove(Post post) {
+    queue.remove(post);
+    queuedBytes -= post.imageBytes;
+  }
+
+  /**
+   * Removes the lowest ranked post; over the byte bound only posts holding images are
+   * considered, as dropping any other post doesn't free anything.
+   */
+  private static Post removeLowestRanked(boolean withImages) {
+    Post lowest = null;
+    for (Post post : queue) {
+      if (withImages && post.imageBytes == 0) continue;
+      if (lowest == null || post.compareTo(lowest) > 0) lowest = post;
+    }
+
+    remove(lowest);
+    return lowest;
+  }
+
+  /**
+   * The importance of the notification's channel, which decides how it is shown from API 26
+   * on; looked up once per channel while posts are queued.
+   */
+  private static int getImportance(Notification notification) {
+    if (Build.VERSION.SDK_INT < 26) return NotificationManager.IMPORTANCE_DEFAULT;
+
+    String channelId = notification.getChannelId();
+    if (channelId == null) return NotificationManager.IMPORTANCE_NONE;
+
+    Integer importance = channelImportance.get(channelId);
+    if (importance == null) {
+      NotificationManager notificationManager = (NotificationManager) getApplicationContext().getSystemService(
+        Context.NOTIFICATION_SERVICE
+      );
+      NotificationChannel channel = notificationManager.getNotificationChannel(channelId);
+      importance = channel != null ? channel.getImportance() : NotificationManager.IMPORTANCE_NONE;
+      channelImportance.put(channelId, importance);
+    }
+
+    return importance;
+  }
+
+  /**
+   * The bytes held by the bitmaps of the notification. A large icon only kept as an Icon
+   * (API 23+) can't be measured and is counted at its target size.
+   */
+  @SuppressWarnings("deprecation")
+  private static long getImageBytes(Notification notification) {
+    Set<Bitmap> bitmaps = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    Bundle extras = notification.extras;
+    if (extras != null) {
+      for (String key : extras.keySet()) {
+        Object value = extras.get(key);
+        if (value instanceof Bitmap) bitmaps.add((Bitmap) value);
+      }
+    }
+
+    long bytes = 0;
+    if (notification.largeIcon != null) {
+      bitmaps.add(notification.largeIcon);
+    } else if (Build.VERSION.SDK_INT >= 23 && notification.getLargeIcon() != null) {
+      int target = ReactNativeFirebaseNotificationBitmapDecoder.TARGET_LARGE_ICON;
+      bytes += 4L * ReactNativeFirebaseNotificationBitmapDecoder.getTargetWidth(target)
+        * ReactNativeFirebaseNotificationBitmapDecoder.getTargetHeight(target);
+    }
+
+    for (Bitmap bitmap : bitmaps) {
+      bytes += bitmap.getByteCount();
+    }
+
+    return bytes;
+  }
+
+  private static void notify(@Nullable String tag, int id, Notification notification) {
+    try {
+      NotificationManagerCompat.from(getApplicationContext()).notify(tag, id, notification);
+    } catch (Exception e) {
+      Log.e(TAG, "Failed to post notification " + id, e);
+    }
+  }
+
+  private static class Post implements Comparable<Post> {
+    final String key;
+    final @Nullable String tag;
+    final int id;
+    final Notification notification;
+    final int importance;
+    final long imageBytes;
+    final long sequence;
+
+    Post(String key, @Nullable String tag, int id, Notification notification, int importance, long imageBytes, long sequence) {
+      this.key = key;
+      this.tag = tag;
+      this.id = id;
+      this.notification = notification;
+      this.importance = importance;
+      this.imageBytes = imageBytes;
+      this.sequence = sequence;
+    }
+
+    /**
+     * Higher channel importance first, then higher priority, then in the order they were
+     * posted.
+     */
+    @SuppressWarnings("deprecation")
+    @Override
+    public int compareTo(Post other) {
+      if (importance != other.importance) {
+        return importance > other.importance ? -1 : 1;
+      }
+
+      if (notification.priority != other.notification.priority) {
+        return notification.priority > other.notification.priority ? -1 : 1;
+      }
+
+      return sequence < other.sequence ? -1 : (sequence > other.sequence ? 1 : 0);
+    }
+  }
+}
@@ -30,13 +30,19 @@ import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
 import com.google.firebase.messaging.RemoteMessage;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import io.invertase.firebase.common.ReactNativeFirebaseEvent;
 
 import static io.invertase.firebase.app.ReactNativeFirebaseApp.getApplicationContext;
-import static io.invertase.firebase.common.SharedUtils.getResId;
+import static io.invertase.firebase.notifications.ReactNativeFirebaseNotificationUtils.getResIdByName;
 
 public class ReactNativeFirebaseNotificationSerializer {
 
@@ -50,10 +56,13 @@ public class ReactNativeFirebaseNotificationSerializer {
   private static final String KEY_ERROR = "error";
   private static final String KEY_TO = "to";
   private static final String KEY_TTL = "ttl";
+  private static final String KEY_MESSAGES = "messages";
+  private static final String KEY_JOURNAL_IDS = "journalIds";
 
   private static final String EVENT_MESSAGE_SENT = "messaging_message_sent";
   private static final String EVENT_MESSAGES_DELETED = "messaging_message_deleted";
   private static final String EVENT_MESSAGE_RECEIVED = "messaging_message_received";
+  private static final String EVENT_MESSAGES_PENDING = "messaging_messages_pending";
   private static final String EVENT_MESSAGE_SEND_ERROR = "messaging_message_send_error";
   private static final String EVENT_NEW_TOKEN = "messaging_token_refresh";
 
@@ -201,6 +210,124 @@ public class ReactNativeFirebaseNotificationSerializer {
     return messageMap;
   }
 
+  static WritableMap remoteMessagesToWritableMap(List<RemoteMessage> remoteMessages, long[] journalIds) {
+    WritableArray messagesArray = Arguments.createArray();
+    for (RemoteMessage remoteMessage : remoteMessages) {
+      messagesArray.pushMap(remoteMessageToWritableMap(remoteMessage));
+    }
+
+    WritableMap messagesMap = Arguments.createMap();
+    messagesMap.putArray(KEY_MESSAGES, messagesArray);
+    messagesMap.putArray(KEY_JOURNAL_IDS, journalIdsToWritableArray(journalIds));
+    return messagesMap;
+  }
+
+  /**
+   * The messages which were journaled but not handled by JS yet, delivered together once JS
+   * has initialised.
+   */
+  static ReactNativeFirebaseEvent journaledMessagesToEvent(List<ReactNativeFirebaseMessageJournal.Entry> entries) {
+    return new ReactNativeFirebaseEvent(EVENT_MESSAGES_PENDING, journaledMessagesToWritableMap(entries));
+  }
+
+  static WritableMap journaledMessagesToWritableMap(List<ReactNativeFirebaseMessageJournal.Entry> entries) {
+    WritableArray messagesArray = Arguments.createArray();
+    long[] journalIds = new long[entries.size()];
+
+    for (int i = 0; i < entries.size(); i++) {
+      ReactNativeFirebaseMessageJournal.Entry entry = entries.get(i);
+      messagesArray.pushMap(remoteMessageBytesToWritableMap(entry.payload));
+      journalIds[i] = entry.id;
+    }
+
+    WritableMap messagesMap = Arguments.createMap();
+    messagesMap.putArray(KEY_MESSAGES, messagesArray);
+    messagesMap.putArray(KEY_JOURNAL_IDS, journalIdsToWritableArray(journalIds));
+    return messagesMap;
+  }
+
+  private static WritableArray journalIdsToWritableArray(long[] journalIds) {
+    WritableArray journalIdsArray = Arguments.createArray();
+    for (long journalId : journalIds) {
+      journalIdsArray.pushDouble(journalId);
+    }
+    return journalIdsArray;
+  }
+
+  /**
+   * Encodes the fields of a message which remoteMessageToWritableMap exposes, for the journal.
+   */
+  static byte[] remoteMessageToBytes(RemoteMessage remoteMessage) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream output = new DataOutputStream(bytes);
+
+    writeNullableString(output, remoteMessage.getCollapseKey());
+    writeNullableString(output, remoteMessage.getFrom());
+    writeNullableString(output, remoteMessage.getTo());
+    writeNullableString(output, remoteMessage.getMessageId());
+    writeNullableString(output, remoteMessage.getMessageType());
+
+    Map<String, String> data = remoteMessage.getData();
+    output.writeInt(data.size());
+    for (Map.Entry<String, String> entry : data.entrySet()) {
+      output.writeUTF(entry.getKey());
+      writeNullableString(output, entry.getValue());
+    }
+
+    output.writeInt(remoteMessage.getTtl());
+    output.writeLong(remoteMessage.getSentTime());
+    output.flush();
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Decodes a message encoded by remoteMessageToBytes into the same map remoteMessageToWritableMap creates.
+   */
+  static WritableMap remoteMessageBytesToWritableMap(byte[] payload) {
+    WritableMap messageMap = Arguments.createMap();
+    WritableMap dataMap = Arguments.createMap();
+
+    try {
+      DataInputStream input = new DataInputStream(new ByteArrayInputStream(payload));
+      putNullableString(messageMap, KEY_COLLAPSE_KEY, readNullableString(input));
+      putNullableString(messageMap, KEY_FROM, readNullableString(input));
+      putNullableString(messageMap, KEY_TO, readNullableString(input));
+      putNullableString(messageMap, KEY_MESSAGE_ID, readNullableString(input));
+      putNullableString(messageMap, KEY_MESSAGE_TYPE, readNullableString(input));
+
+      int dataSize = input.readInt();
+      for (int i = 0; i < dataSize; i++) {
+        dataMap.putString(input.readUTF(), readNullableString(input));
+      }
+
+      messageMap.putDouble(KEY_TTL, input.readInt());
+      messageMap.putDouble(KEY_SENT_TIME, input.readLong());
+    } catch (IOException e) {
+      // checksummed by the journal, only a format change could get here
+    }
+
+    messageMap.putMap(KEY_DATA, dataMap);
+    return messageMap;
+  }
+
+  private static void writeNullableString(DataOutputStream output, @Nullable String value) throws IOException {
+    output.writeBoolean(value != null);
+    if (value != null) output.writeUTF(value);
+  }
+
+  private static @Nullable
+  String readNullableString(DataInputStream input) throws IOException {
+    return input.readBoolean() ? input.readUTF() : null;
+  }
+
+  private static void putNullableString(WritableMap map, String key, @Nullable String value) {
+    if (value != null) map.putString(key, value);
+  }
+
+  static ReactNativeFirebaseEvent remoteMessageToEvent(RemoteMessage remoteMessage) {
+    return new ReactNativeFirebaseEvent(EVENT_MESSAGE_RECEIVED, remoteMessageToWritableMap(remoteMessage));
+  }
+
   static ReactNativeFirebaseEvent remoteNotificationToEvent(RemoteMessage remoteMessage) {
     return new ReactNativeFirebaseEvent(EVENT_NOTIFICATION_RECEIVED, remoteNotificationToWritableMap(remoteMessage));
   }
@@ -333,7 +460,7 @@ public class ReactNativeFirebaseNotificationSerializer {
     if (bodyLocKey != null) {
       String[] bodyLocArgs = notification.getBodyLocalizationArgs();
       Context ctx = getApplicationContext();
-      int resId = getResId(ctx, bodyLocKey);
+      int resId = getResIdByName(ctx, bodyLocKey, "string");
       return ctx
         .getResources()
         .getString(resId, (Object[]) bodyLocArgs);
@@ -349,7 +476,7 @@ public class ReactNativeFirebaseNotificationSerializer {
     if (titleLocKey != null) {
       String[] titleLocArgs = notification.getTitleLocalizationArgs();
       Context ctx = getApplicationContext();
-      int resId = getResId(ctx, titleLocKey);
+      int resId = getResIdByName(ctx, titleLocKey, "string");
       return ctx
         .getResources()
         .getString(resId, (Object[]) titleLocArgs);
@@ -0,0 +1,661 @@
+/*
+ * Copyright (c) 2019-present Madhusudan Sapkota & Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this library except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.invertase.firebase.notifications;
+
+import android.os.Bundle;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReadableMap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import static io.invertase.firebase.notifications.ReactNativeFirebaseNotificationUtils.getResourceIcon;
+import static io.invertase.firebase.notifications.ReactNativeFirebaseNotificationUtils.parseColor;
+
+/**
+ * An immutable, typed view of a notification as validated by the JS side. The Bundle is
+ * walked once: numbers are converted from the doubles the bridge delivers, colors are
+ * parsed and icons resolved up front, so building, updating and serializing the
+ * notification never read the Bundle again.
+ */
+final class ReactNativeFirebaseNotificationSpec {
+  static final int STYLE_BIG_PICTURE = 0;
+  static final int STYLE_BIG_TEXT = 1;
+
+  final String notificationId;
+  final @Nullable String title;
+  final @Nullable String subtitle;
+  final @Nullable String body;
+  final @Nullable String sound;
+  private final @Nullable Bundle data;
+  private final @Nullable Bundle ios;
+
+  final Android android;
+
+  private ReactNativeFirebaseNotificationSpec(
+    String notificationId,
+    @Nullable String title,
+    @Nullable String subtitle,
+    @Nullable String body,
+    @Nullable String sound,
+    @Nullable Bundle data,
+    @Nullable Bundle ios,
+    Android android
+  ) {
+    this.notificationId = notificationId;
+    this.title = title;
+    this.subtitle = subtitle;
+    this.body = body;
+    this.sound = sound;
+    this.data = data;
+    this.ios = ios;
+    this.android = android;
+  }
+
+  static ReactNativeFirebaseNotificationSpec fromBundle(Bundle bundle) {
+    Bundle androidBundle = bundle.getBundle("android");
+
+    return new ReactNativeFirebaseNotificationSpec(
+      bundle.getString("notificationId"),
+      bundle.getString("title"),
+      bundle.getString("subtitle"),
+      bundle.getString("body"),
+      bundle.getString("sound"),
+      copyBundle(bundle.getBundle("data")),
+      copyBundle(bundle.getBundle("ios")),
+      new Android(androidBundle != null ? androidBundle : new Bundle())
+    );
+  }
+
+  static ReactNativeFirebaseNotificationSpec fromReadableMap(ReadableMap readableMap) {
+    return fromBundle(Arguments.toBundle(readableMap));
+  }
+
+  /**
+   * Returns a spec with the same options and the given content, content keys which are not
+   * present are kept from this spec. The parsed android options are shared.
+   */
+  ReactNativeFirebaseNotificationSpec withContent(ReadableMap content) {
+    return new ReactNativeFirebaseNotificationSpec(
+      content.hasKey("notificationId") ? content.getString("notificationId") : notificationId,
+      content.hasKey("title") ? content.getString("title") : title,
+      content.hasKey("subtitle") ? content.getString("subtitle") : subtitle,
+      content.hasKey("body") ? content.getString("body") : body,
+      sound,
+      content.hasKey("data") ? Arguments.toBundle(content.getMap("data")) : data,
+      ios,
+      android
+    );
+  }
+
+  /**
+   * Returns a spec with the given partial notification applied on top of this one. Top level
+   * keys are replaced, the android options are merged key by key. The notificationId can't
+   * be changed.
+   */
+  ReactNativeFirebaseNotificationSpec withPatch(ReadableMap patch) {
+    Bundle bundle = toBundle();
+    Bundle patchBundle = Arguments.toBundle(patch);
+    patchBundle.remove("notificationId");
+
+    Bundle patchAndroid = patchBundle.getBundle("android");
+    patchBundle.remove("android");
+    bundle.putAll(patchBundle);
+
+    if (patchAndroid != null) {
+      Objects.requireNonNull(bundle.getBundle("android")).putAll(patchAndroid);
+    }
+
+    return fromBundle(bundle);
+  }
+
+  /**
+   * Returns a spec with the progress bar replaced.
+   */
+  ReactNativeFirebaseNotificationSpec withProgress(int current, int max, boolean indeterminate) {
+    Bundle progress = new Bundle();
+    progress.putDouble("max", max);
+    progress.putDouble("current", current);
+    progress.putBoolean("indeterminate", indeterminate);
+
+    Bundle bundle = toBundle();
+    Objects.requireNonNull(bundle.getBundle("android")).putBundle("progress", progress);
+    return fromBundle(bundle);
+  }
+
+  /**
+   * The notification data, shared; callers must not modify it.
+   */
+  @Nullable
+  Bundle getData() {
+    return data;
+  }
+
+  /**
+   * Serializes the spec back into the Bundle shape it was parsed from.
+   */
+  Bundle toBundle() {
+    Bundle bundle = new Bundle();
+    bundle.putString("notificationId", notificationId);
+    putString(bundle, "title", title);
+    putString(bundle, "subtitle", subtitle);
+    putString(bundle, "body", body);
+    putString(bundle, "sound", sound);
+    if (data != null) bundle.putBundle("data", new Bundle(data));
+    if (ios != null) bundle.putBundle("ios", new Bundle(ios));
+    bundle.putBundle("android", android.toBundle());
+    return bundle;
+  }
+
+  static final class Android {
+    // presence bits for the options with primitive values
+    private static final int AUTO_CANCEL = 1;
+    private static final int BADGE_ICON_TYPE = 1 << 1;
+    private static final int COLORIZED = 1 << 2;
+    private static final int DEFAULTS = 1 << 3;
+    private static final int GROUP_ALERT_BEHAVIOR = 1 << 4;
+    private static final int GROUP_SUMMARY = 1 << 5;
+    private static final int LIGHTS = 1 << 6;
+    private static final int LOCAL_ONLY = 1 << 7;
+    private static final int NUMBER = 1 << 8;
+    private static final int ONGOING = 1 << 9;
+    private static final int ONLY_ALERT_ONCE = 1 << 10;
+    private static final int PRIORITY = 1 << 11;
+    private static final int PROGRESS = 1 << 12;
+    private static final int SHOW_WHEN_TIMESTAMP = 1 << 13;
+    private static final int SMALL_ICON = 1 << 14;
+    private static final int TIMEOUT_AFTER = 1 << 15;
+    private static final int USES_CHRONOMETER = 1 << 16;
+    private static final int VISIBILITY = 1 << 17;
+    private static final int WHEN = 1 << 18;
+    private static final int COLOR = 1 << 19;
+
+    private final int present;
+
+    final String channelId;
+    final @Nullable String tag;
+    final @Nullable String category;
+    final @Nullable String clickAction;
+    final @Nullable String contentInfo;
+    final @Nullable String group;
+    final @Nullable String largeIcon;
+    final @Nullable String shortcutId;
+    final @Nullable String sortKey;
+    final @Nullable String ticker;
+
+    final boolean autoCancel;
+    final boolean colorized;
+    final boolean groupSummary;
+    final boolean localOnly;
+    final boolean ongoing;
+    final boolean onlyAlertOnce;
+    final boolean showWhenTimestamp;
+    final boolean usesChronometer;
+
+    final int badgeIconType;
+    // kept as sent for serialization, defaults holds the combined bitmask
+    private final @Nullable ArrayList<Object> defaultsList;
+    final int defaults;
+    final int groupAlertBehavior;
+    final int number;
+    final int priority;
+    final int visibility;
+    final long timeoutAfter;
+    final long when;
+
+    private final @Nullable String colorString;
+    final int color;
+
+    private final @Nullable String lightsColorString;
+    final int lightsColor;
+    final int lightsOnMs;
+    final int lightsOffMs;
+
+    private final @Nullable String smallIconName;
+    final int smallIcon;
+    final int smallIconLevel;
+
+    final int progressMax;
+    final int progressCurrent;
+    final boolean progressIndeterminate;
+
+    private final @Nullable long[] vibrationPattern;
+    private final @Nullable String[] remoteInputHistory;
+    final @Nullable Style style;
+    final List<Action> actions;
+
+    private Android(Bundle bundle) {
+      int present = 0;
+
+      String channelId = bundle.getString("channelId");
+      this.channelId = channelId != null ? channelId : "";
+      tag = bundle.getString("tag");
+      category = bundle.getString("category");
+      clickAction = bundle.getString("clickAction");
+      contentInfo = bundle.getString("contentInfo");
+      group = bundle.getString("group");
+      largeIcon = bundle.getString("largeIcon");
+      shortcutId = bundle.getString("shortcutId");
+      sortKey = bundle.getString("sortKey");
+      ticker = bundle.getString("ticker");
+
+      if (bundle.containsKey("autoCancel")) present |= AUTO_CANCEL;
+      autoCancel = bundle.getBoolean("autoCancel");
+      if (bundle.containsKey("colorized")) present |= COLORIZED;
+      colorized = bundle.getBoolean("colorized");
+      if (bundle.containsKey("groupSummary")) present |= GROUP_SUMMARY;
+      groupSummary = bundle.getBoolean("groupSummary");
+      if (bundle.containsKey("localOnly")) present |= LOCAL_ONLY;
+      localOnly = bundle.getBoolean("localOnly");
+      if (bundle.containsKey("ongoing")) present |= ONGOING;
+      ongoing = bundle.getBoolean("ongoing");
+      if (bundle.containsKey("onlyAlertOnce")) present |= ONLY_ALERT_ONCE;
+      onlyAlertOnce = bundle.getBoolean("onlyAlertOnce");
+      if (bundle.containsKey("showWhenTimestamp")) present |= SHOW_WHEN_TIMESTAMP;
+      showWhenTimestamp = bundle.getBoolean("showWhenTimestamp");
+      if (bundle.containsKey("usesChronometer")) present |= USES_CHRONOMETER;
+      usesChronometer = bundle.getBoolean("usesChronometer");
+
+      if (bundle.containsKey("badgeIconType")) present |= BADGE_ICON_TYPE;
+      badgeIconType = getInt(bundle, "badgeIconType");
+      if (bundle.containsKey("groupAlertBehavior")) present |= GROUP_ALERT_BEHAVIOR;
+      groupAlertBehavior = getInt(bundle, "groupAlertBehavior");
+      if (bundle.containsKey("number")) present |= NUMBER;
+      number = getInt(bundle, "number");
+      if (bundle.containsKey("priority")) present |= PRIORITY;
+      priority = getInt(bundle, "priority");
+      if (bundle.containsKey("visibility")) present |= VISIBILITY;
+      visibility = getInt(bundle, "visibility");
+      if (bundle.containsKey("timeoutAfter")) present |= TIMEOUT_AFTER;
+      timeoutAfter = getLong(bundle, "timeoutAfter");
+      if (bundle.containsKey("when")) present |= WHEN;
+      when = getLong(bundle, "when");
+
+      colorString = bundle.getString("color");
+      if (colorString != null) {
+        present |= COLOR;
+        color = parseColor(colorString);
+      } else {
+        color = 0;
+      }
+
+      // lights: [color, onMs, offMs]
+      List<?> lights = getList(bundle, "lights");
+      if (lights != null) {
+        present |= LIGHTS;
+        lightsColorString = (String) lights.get(0);
+        lightsColor = parseColor(lightsColorString);
+        lightsOnMs = ((Number) lights.get(1)).intValue();
+        lightsOffMs = ((Number) lights.get(2)).intValue();
+      } else {
+        lightsColorString = null;
+        lightsColor = 0;
+        lightsOnMs = 0;
+        lightsOffMs = 0;
+      }
+
+      // defaults: a list of AndroidDefaults values
+      List<?> defaultsValues = getList(bundle, "defaults");
+      if (defaultsValues != null) {
+        present |= DEFAULTS;
+        defaultsList = new ArrayList<Object>(defaultsValues);
+        defaults = combineDefaults(defaultsValues);
+      } else {
+        defaultsList = null;
+        defaults = 0;
+      }
+
+      // smallIcon: [name, level], a level of -1 means none
+      List<?> smallIconList = getList(bundle, "smallIcon");
+      if (smallIconList != null) {
+        present |= SMALL_ICON;
+        smallIconName = (String) smallIconList.get(0);
+        smallIcon = getResourceIcon(smallIconName);
+        smallIconLevel = ((Number) smallIconList.get(1)).intValue();
+      } else {
+        smallIconName = null;
+        smallIcon = 0;
+        smallIconLevel = -1;
+      }
+
+      Bundle progress = bundle.getBundle("progress");
+      if (progress != null) {
+        present |= PROGRESS;
+        progressMax = getInt(progress, "max");
+        progressCurrent = getInt(progress, "current");
+        progressIndeterminate = progress.getBoolean("indeterminate");
+      } else {
+        progressMax = 0;
+        progressCurrent = 0;
+        progressIndeterminate = false;
+      }
+
+      List<?> vibration = getList(bundle, "vibrationPattern");
+      if (vibration != null) {
+        vibrationPattern = new long[vibration.size()];
+        for (int i = 0; i < vibrationPattern.length; i++) {
+          vibrationPattern[i] = ((Number) vibration.get(i)).longValue();
+        }
+      } else {
+        vibrationPattern = null;
+      }
+
+      List<?> history = getList(bundle, "remoteInputHistory");
+      if (history != null) {
+        remoteInputHistory = new String[history.size()];
+        for (int i = 0; i < remoteInputHistory.length; i++) {
+          remoteInputHistory[i] = (String) history.get(i);
+        }
+      } else {
+        remoteInputHistory = null;
+      }
+
+      Bundle styleBundle = bundle.getBundle("style");
+      style = styleBundle != null ? new Style(styleBundle) : null;
+
+      List<?> actionList = getList(bundle, "actions");
+      if (actionList != null) {
+        List<Action> actions = new ArrayList<>(actionList.size());
+        for (Object action : actionList) {
+          actions.add(new Action((Bundle) action));
+        }
+        this.actions = Collections.unmodifiableList(actions);
+      } else {
+        this.actions = Collections.emptyList();
+      }
+
+      this.present = present;
+    }
+
+    boolean hasAutoCancel() {
+      return (present & AUTO_CANCEL) != 0;
+    }
+
+    boolean hasBadgeIconType() {
+      return (present & BADGE_ICON_TYPE) != 0;
+    }
+
+    boolean hasColor() {
+      return (present & COLOR) != 0;
+    }
+
+    boolean hasColorized() {
+      return (present & COLORIZED) != 0;
+    }
+
+    boolean hasDefaults() {
+      return (present & DEFAULTS) != 0;
+    }
+
+    boolean hasGroupAlertBehavior() {
+      return (present & GROUP_ALERT_BEHAVIOR) != 0;
+    }
+
+    boolean hasGroupSummary() {
+      return (present & GROUP_SUMMARY) != 0;
+    }
+
+    boolean hasLights() {
+      return (present & LIGHTS) != 0;
+    }
+
+    boolean hasLocalOnly() {
+      return (present & LOCAL_ONLY) != 0;
+    }
+
+    boolean hasNumber() {
+      return (present & NUMBER) != 0;
+    }
+
+    boolean hasOngoing() {
+      return (present & ONGOING) != 0;
+    }
+
+    boolean hasOnlyAlertOnce() {
+      return (present & ONLY_ALERT_ONCE) != 0;
+    }
+
+    boolean hasPriority() {
+      return (present & PRIORITY) != 0;
+    }
+
+    boolean hasProgress() {
+      return (present & PROGRESS) != 0;
+    }
+
+    boolean hasShowWhenTimestamp() {
+      return (present & SHOW_WHEN_TIMESTAMP) != 0;
+    }
+
+    boolean hasSmallIcon() {
+      return (present & SMALL_ICON) != 0;
+    }
+
+    boolean hasTimeoutAfter() {
+      return (present & TIMEOUT_AFTER) != 0;
+    }
+
+    boolean hasUsesChronometer() {
+      return (present & USES_CHRONOMETER) != 0;
+    }
+
+    boolean hasVisibility() {
+      return (present & VISIBILITY) != 0;
+    }
+
+    boolean hasWhen() {
+      return (present & WHEN) != 0;
+    }
+
+    /**
+     * True while the notification shows a running progress bar, i.e. further updates are expected.
+     */
+    boolean isInProgress() {
+      return hasProgress() && (progressIndeterminate || progressCurrent < progressMax);
+    }
+
+    @Nullable
+    long[] getVibrationPattern() {
+      return vibrationPattern != null ? vibrationPattern.clone() : null;
+    }
+
+    @Nullable
+    String[] getRemoteInputHistory() {
+      return remoteInputHistory != null ? remoteInputHistory.clone() : null;
+    }
+
+    Bundle toBundle() {
+      Bundle bundle = new Bundle();
+      bundle.putString("channelId", channelId);
+      putString(bundle, "tag", tag);
+      putString(bundle, "category", category);
+      putString(bundle, "clickAction", clickAction);
+      putString(bundle, "contentInfo", contentInfo);
+      putString(bundle, "group", group);
+      putString(bundle, "largeIcon", largeIcon);
+      putString(bundle, "shortcutId", shortcutId);
+      putString(bundle, "sortKey", sortKey);
+      putString(bundle, "ticker", ticker);
+      putString(bundle, "color", colorString);
+
+      if (hasAutoCancel()) bundle.putBoolean("autoCancel", autoCancel);
+      if (hasColorized()) bundle.putBoolean("colorized", colorized);
+      if (hasGroupSummary()) bundle.putBoolean("groupSummary", groupSummary);
+      if (hasLocalOnly()) bundle.putBoolean("localOnly", localOnly);
+      if (hasOngoing()) bundle.putBoolean("ongoing", ongoing);
+      if (hasOnlyAlertOnce()) bundle.putBoolean("onlyAlertOnce", onlyAlertOnce);
+      if (hasShowWhenTimestamp()) bundle.putBoolean("showWhenTimestamp", showWhenTimestamp);
+      if (hasUsesChronometer()) bundle.putBoolean("usesChronometer", usesChronometer);
+
+      if (hasBadgeIconType()) bundle.putDouble("badgeIconType", badgeIconType);
+      if (hasGroupAlertBehavior()) bundle.putDouble("groupAlertBehavior", groupAlertBehavior);
+      if (hasNumber()) bundle.putDouble("number", number);
+      if (hasPriority()) bundle.putDouble("priority", priority);
+      if (hasVisibility()) bundle.putDouble("visibility", visibility);
+      if (hasTimeoutAfter()) bundle.putDouble("timeoutAfter", timeoutAfter);
+      if (hasWhen()) bundle.putDouble("when", when);
+
+      if (hasLights()) {
+        ArrayList<Object> lights = new ArrayList<>(3);
+        lights.add(lightsColorString);
+        lights.add((double) lightsOnMs);
+        lights.add((double) lightsOffMs);
+        putList(bundle, "lights", lights);
+      }
+
+      if (hasDefaults()) {
+        putList(bundle, "defaults", new ArrayList<>(defaultsList));
+      }
+
+      if (hasSmallIcon()) {
+        ArrayList<Object> smallIconList = new ArrayList<>(2);
+        smallIconList.add(smallIconName);
+        smallIconList.add((double) smallIconLevel);
+        putList(bundle, "smallIcon", smallIconList);
+      }
+
+      if (hasProgress()) {
+        Bundle progress = new Bundle();
+        progress.putDouble("max", progressMax);
+        progress.putDouble("current", progressCurrent);
+        progress.putBoolean("indeterminate", progressIndeterminate);
+        bundle.putBundle("progress", progress);
+      }
+
+      if (vibrationPattern != null) {
+        ArrayList<Object> vibration = new ArrayList<>(vibrationPattern.length);
+        for (long value : vibrationPattern) {
+          vibration.add((double) value);
+        }
+        putList(bundle, "vibrationPattern", vibration);
+      }
+
+      if (remoteInputHistory != null) {
+        ArrayList<Object> history = new ArrayList<>(remoteInputHistory.length);
+        Collections.addAll(history, (Object[]) remoteInputHistory);
+        putList(bundle, "remoteInputHistory", history);
+      }
+
+      if (style != null) {
+        bundle.putBundle("style", style.toBundle());
+      }
+
+      if (!actions.isEmpty()) {
+        ArrayList<Object> actionList = new ArrayList<>(actions.size());
+        for (Action action : actions) {
+          actionList.add(new Bundle(action.source));
+        }
+        putList(bundle, "actions", actionList);
+      }
+
+      return bundle;
+    }
+  }
+
+  static final class Style {
+    final int type;
+    final @Nullable String picture;
+    final @Nullable String largeIcon;
+    final @Nullable String title;
+    final @Nullable String summary;
+    final @Nullable String text;
+
+    private Style(Bundle bundle) {
+      type = getInt(bundle, "type");
+      picture = bundle.getString("picture");
+      largeIcon = bundle.getString("largeIcon");
+      title = bundle.getString("title");
+      summary = bundle.getString("summary");
+      text = bundle.getString("text");
+    }
+
+    private Bundle toBundle() {
+      Bundle bundle = new Bundle();
+      bundle.putDouble("type", type);
+      putString(bundle, "picture", picture);
+      putString(bundle, "largeIcon", largeIcon);
+      putString(bundle, "title", title);
+      putString(bundle, "summary", summary);
+      putString(bundle, "text", text);
+      return bundle;
+    }
+  }
+
+  static final class Action {
+    final @Nullable String action;
+    final @Nullable String title;
+    final int icon;
+    final boolean showUserInterface;
+    // kept as-is for serialization, remote inputs are not read natively yet
+    private final Bundle source;
+
+    private Action(Bundle bundle) {
+      action = bundle.getString("action");
+      title = bundle.getString("title");
+      icon = getResourceIcon(bundle.getString("icon"));
+      showUserInterface = bundle.getBoolean("showUserInterface");
+      source = new Bundle(bundle);
+    }
+  }
+
+  private static int getInt(Bundle bundle, String key) {
+    Object value = bundle.get(key);
+    return value instanceof Number ? ((Number) value).intValue() : 0;
+  }
+
+  /**
+   * The NotificationCompat defaults bitmask of a list of AndroidDefaults, ALL (-1) includes
+   * every flag.
+   */
+  private static int combineDefaults(List<?> values) {
+    int defaults = 0;
+    for (Object value : values) {
+      if (value instanceof Number) defaults |= ((Number) value).intValue();
+    }
+    return defaults;
+  }
+
+  private static long getLong(Bundle bundle, String key) {
+    Object value = bundle.get(key);
+    return value instanceof Number ? ((Number) value).longValue() : 0;
+  }
+
+  private static @Nullable
+  List<?> getList(Bundle bundle, String key) {
+    Object value = bundle.get(key);
+    return value instanceof List ? (List<?>) value : null;
+  }
+
+  private static void putList(Bundle bundle, String key, ArrayList<Object> list) {
+    bundle.putSerializable(key, list);
+  }
+
+  private static void putString(Bundle bundle, String key, @Nullable String value) {
+    if (value != null) bundle.putString(key, value);
+  }
+
+  private static @Nullable
+  Bundle copyBundle(@Nullable Bundle bundle) {
+    return bundle != null ? new Bundle(bundle) : null;
+  }
+}
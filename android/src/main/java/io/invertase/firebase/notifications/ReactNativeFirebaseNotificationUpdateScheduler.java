@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2019-present Madhusudan Sapkota & Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this library except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.invertase.firebase.notifications;
+
+import android.app.Notification;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.invertase.firebase.common.ReactNativeFirebaseJSON;
+
+/**
+ * Posts notifications, coalescing rapid updates of the same notification (id & tag).
+ *
+ * Android drops notify() calls from apps that post too often, so an update arriving within
+ * the update interval of the previous post is held back and replaced by any newer one;
+ * only the newest state is posted once the interval has passed. Terminal states (anything
+ * that is not an in-progress update) are posted immediately and discard held updates.
+ */
+class ReactNativeFirebaseNotificationUpdateScheduler {
+  private static final String TAG = "RNFNotificationUpdates";
+
+  private static final String UPDATE_INTERVAL_JSON_KEY = "notification_android_update_interval";
+  private static final long UPDATE_INTERVAL_DEFAULT = 500;
+
+  // idle slots only remember when their notification was last posted, drop them past this
+  private static final int MAX_IDLE_SLOTS = 64;
+
+  private static final Handler handler = new Handler(Looper.getMainLooper());
+  private static final Map<String, Slot> slots = new HashMap<>();
+  private static final AtomicLong coalescedUpdates = new AtomicLong();
+
+  private static long updateInterval = -1;
+
+  private static synchronized long getUpdateInterval() {
+    if (updateInterval < 0) {
+      updateInterval = Math.max(0, ReactNativeFirebaseJSON.getSharedInstance().getLongValue(UPDATE_INTERVAL_JSON_KEY, UPDATE_INTERVAL_DEFAULT));
+    }
+
+    return updateInterval;
+  }
+
+  /**
+   * Posts the notification now, or holds it back if it updates a notification posted less
+   * than the update interval ago.
+   *
+   * @param terminal true if this state must not be delayed or replaced
+   */
+  static void post(@Nullable String tag, int id, Notification notification, boolean terminal) {
+    String key = getKey(tag, id);
+    long now = SystemClock.uptimeMillis();
+
+    synchronized (slots) {
+      Slot slot = slots.get(key);
+
+      if (terminal) {
+        if (slot != null) {
+          if (slot.pending != null) coalescedUpdates.incrementAndGet();
+          handler.removeCallbacks(slot.flush);
+          slots.remove(key);
+        }
+      } else {
+        if (slot == null) {
+          trimIdleSlots(now);
+          slot = new Slot(key, tag, id);
+          slots.put(key, slot);
+        }
+
+        long nextPostAt = slot.lastPostedAt + getUpdateInterval();
+        if (slot.pending != null || (slot.lastPostedAt > 0 && now < nextPostAt)) {
+          if (slot.pending != null) {
+            coalescedUpdates.incrementAndGet();
+          } else {
+            handler.postAtTime(slot.flush, nextPostAt);
+          }
+
+          slot.pending = notification;
+          return;
+        }
+
+        slot.lastPostedAt = now;
+      }
+    }
+
+    ReactNativeFirebaseNotificationPostQueue.post(tag, id, notification);
+  }
+
+  /**
+   * Cancels the notification, discarding a held back update.
+   */
+  static void cancel(@Nullable String tag, int id) {
+    synchronized (slots) {
+      Slot slot = slots.remove(getKey(tag, id));
+      if (slot != null) handler.removeCallbacks(slot.flush);
+    }
+
+    ReactNativeFirebaseNotificationPostQueue.cancel(tag, id);
+  }
+
+  /**
+   * Cancels all notifications, discarding held back updates.
+   */
+  static void cancelAll() {
+    synchronized (slots) {
+      for (Slot slot : slots.values()) {
+        handler.removeCallbacks(slot.flush);
+      }
+      slots.clear();
+    }
+
+    ReactNativeFirebaseNotificationPostQueue.cancelAll();
+  }
+
+  /**
+   * The number of notification updates which were replaced by a newer update before being posted.
+   */
+  static long getCoalescedUpdateCount() {
+    return coalescedUpdates.get();
+  }
+
+  private static void flush(Slot slot) {
+    Notification notification;
+
+    synchronized (slots) {
+      if (slots.get(slot.key) != slot || slot.pending == null) return;
+      notification = slot.pending;
+      slot.pending = null;
+      slot.lastPostedAt = SystemClock.uptimeMillis();
+    }
+
+    try {
+      ReactNativeFirebaseNotificationPostQueue.post(slot.tag, slot.id, notification);
+    } catch (Exception e) {
+      Log.e(TAG, "Failed to post notification update " + slot.id, e);
+    }
+  }
+
+  private static void trimIdleSlots(long now) {
+    if (slots.size() < MAX_IDLE_SLOTS) return;
+
+    Iterator<Slot> iterator = slots.values().iterator();
+    while (iterator.hasNext()) {
+      Slot slot = iterator.next();
+      if (slot.pending == null && now - slot.lastPostedAt >= getUpdateInterval()) {
+        iterator.remove();
+      }
+    }
+  }
+
+  private static String getKey(@Nullable String tag, int id) {
+    return id + ":" + tag;
+  }
+
+  private static class Slot {
+    final String key;
+    final @Nullable String tag;
+    final int id;
+    final Runnable flush;
+    long lastPostedAt;
+    @Nullable Notification pending;
+
+    Slot(String key, @Nullable String tag, int id) {
+      this.key = key;
+      this.tag = tag;
+      this.id = id;
+      this.flush = () -> ReactNativeFirebaseNotificationUpdateScheduler.flush(this);
+    }
+  }
+}
@@ -20,19 +20,65 @@ package io.invertase.firebase.notifications;
 import android.content.Context;
 import android.content.Intent;
 import android.database.Cursor;
+import android.graphics.Color;
 import android.media.RingtoneManager;
 import android.net.Uri;
+import android.os.SystemClock;
 import android.provider.OpenableColumns;
 import android.util.Log;
+import android.util.LruCache;
 
 import androidx.annotation.Nullable;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.invertase.firebase.common.ReactNativeFirebaseJSON;
+
 import static io.invertase.firebase.app.ReactNativeFirebaseApp.getApplicationContext;
 
 public class ReactNativeFirebaseNotificationUtils {
+  private static final int RESOURCE_ID_CACHE_SIZE = 512;
+  private static final int CONVERSION_CACHE_SIZE = 128;
+  private static final int FILE_NAME_CACHE_SIZE = 64;
+  // content providers can rename their files, names older than this are looked up again
+  static final long FILE_NAME_MAX_AGE = 5 * 60 * 1000;
+  private static final String LAUNCH_ACTIVITY_JSON_KEY = "notification_android_launch_activity";
+
+  private static final Map<String, Integer> resourceIds = new ConcurrentHashMap<>();
+  private static final AtomicLong resourceIdHits = new AtomicLong();
+  private static final AtomicLong resourceIdMisses = new AtomicLong();
+
+  // parsed colors and resolved sound uris, keyed by "color:" / "sound:" and the input string
+  private static final LruCache<String, Object> conversions = new LruCache<>(CONVERSION_CACHE_SIZE);
+  private static final AtomicLong conversionHits = new AtomicLong();
+  private static final AtomicLong conversionMisses = new AtomicLong();
+
+  private static final LruCache<String, CachedFileName> fileNames = new LruCache<>(FILE_NAME_CACHE_SIZE);
+
+  private static volatile Class launchActivityClass;
+  private static volatile boolean launchActivityResolved;
 
+  /**
+   * Returns the display name of a (sound) uri. content:// names need a ContentResolver query,
+   * so names are cached for FILE_NAME_MAX_AGE.
+   */
+  static String getFileName(Context context, @Nullable Uri uri) {
+    if (uri == null) return "default";
 
-  static String getFileName(Context context, Uri uri) {
+    String key = uri.toString();
+    CachedFileName cached = fileNames.get(key);
+    if (cached != null && SystemClock.elapsedRealtime() - cached.resolvedAt < FILE_NAME_MAX_AGE) {
+      return cached.name;
+    }
+
+    String name = resolveFileName(context, uri);
+    fileNames.put(key, new CachedFileName(name, SystemClock.elapsedRealtime()));
+    return name;
+  }
+
+  private static String resolveFileName(Context context, Uri uri) {
     String result = null;
     if (uri.getScheme() != null && uri.getScheme().equals("content")) {
       Cursor cursor = context.getContentResolver().query(uri, null, null, null, null);
@@ -63,11 +109,60 @@ public class ReactNativeFirebaseNotificationUtils {
   }
 
 
+  /**
+   * Color.parseColor, memoized as the same few colors are parsed for every notification and channel.
+   */
+  static int parseColor(String color) {
+    String key = "color:" + color;
+    Object cached = conversions.get(key);
+    if (cached != null) {
+      conversionHits.incrementAndGet();
+      return (Integer) cached;
+    }
+
+    conversionMisses.incrementAndGet();
+    int value = Color.parseColor(color);
+    conversions.put(key, value);
+    return value;
+  }
+
+  private static class CachedFileName {
+    final String name;
+    final long resolvedAt;
+
+    CachedFileName(String name, long resolvedAt) {
+      this.name = name;
+      this.resolvedAt = resolvedAt;
+    }
+  }
+
   static Uri getSoundUri(@Nullable String sound) {
     if (sound == null) {
       return RingtoneManager.getDefaultUri(RingtoneManager.TYPE_NOTIFICATION);
     }
 
+    String key = "sound:" + sound;
+    Object cached = conversions.get(key);
+    if (cached != null) {
+      conversionHits.incrementAndGet();
+      return (Uri) cached;
+    }
+
+    conversionMisses.incrementAndGet();
+    Uri uri = resolveSoundUri(sound);
+    conversions.put(key, uri);
+    return uri;
+  }
+
+  static long getConversionCacheHits() {
+    return conversionHits.get();
+  }
+
+  static long getConversionCacheMisses() {
+    return conversionMisses.get();
+  }
+
+  private static Uri resolveSoundUri(String sound) {
     if (sound.contains("://")) {
       return Uri.parse(sound);
     }
@@ -92,16 +187,75 @@ public class ReactNativeFirebaseNotificationUtils {
     return Uri.parse("android.resource://" + getApplicationContext().getPackageName() + "/" + resourceId);
   }
 
+  /**
+   * Resolves a resource id by name. Resources.getIdentifier is slow, so results (including
+   * misses, returned as 0) are memoized for the lifetime of the process.
+   */
   public static int getResIdByName(Context ctx, String name, String defType){
-    return ctx.getResources().getIdentifier(name, defType, ctx.getPackageName());
+    String key = defType + "/" + name;
+    Integer cached = resourceIds.get(key);
+    if (cached != null) {
+      resourceIdHits.incrementAndGet();
+      return cached;
+    }
+
+    resourceIdMisses.incrementAndGet();
+    int resourceId = ctx.getResources().getIdentifier(name, defType, ctx.getPackageName());
+
+    // names can come from remote messages, don't let the cache grow without bound
+    if (resourceIds.size() >= RESOURCE_ID_CACHE_SIZE) resourceIds.clear();
+    resourceIds.put(key, resourceId);
+    return resourceId;
+  }
+
+  static long getResourceIdCacheHits() {
+    return resourceIdHits.get();
+  }
+
+  static long getResourceIdCacheMisses() {
+    return resourceIdMisses.get();
   }
 
+  static int getResourceIcon(String icon) {
+    Context ctx = getApplicationContext();
+    int resourceId = getResIdByName(ctx, icon, "mipmap");
+    if (resourceId == 0) {
+      resourceId = getResIdByName(ctx, icon, "drawable");
+    }
+
+    return resourceId;
+  }
+
+  /**
+   * Returns the activity notification actions open. Resolved once per process, either from the
+   * firebase.json `notification_android_launch_activity` class name or the package's launch intent.
+   */
   public static Class getLaunchActivityClass(Context ctx){
+    if (!launchActivityResolved) {
+      synchronized (ReactNativeFirebaseNotificationUtils.class) {
+        if (!launchActivityResolved) {
+          launchActivityClass = resolveLaunchActivityClass(ctx);
+          launchActivityResolved = true;
+        }
+      }
+    }
+
+    return launchActivityClass;
+  }
+
+  private static Class resolveLaunchActivityClass(Context ctx) {
     String packageName = ctx.getPackageName();
-    Intent launchIntent = ctx.getPackageManager().getLaunchIntentForPackage(packageName);
+    String className = ReactNativeFirebaseJSON.getSharedInstance().getStringValue(LAUNCH_ACTIVITY_JSON_KEY, null);
 
     try {
-      return Class.forName(launchIntent.getComponent().getClassName());
+      if (className == null || className.isEmpty()) {
+        Intent launchIntent = ctx.getPackageManager().getLaunchIntentForPackage(packageName);
+        className = launchIntent.getComponent().getClassName();
+      } else if (className.startsWith(".")) {
+        className = packageName + className;
+      }
+
+      return Class.forName(className);
     } catch (NullPointerException | ClassNotFoundException e) {
       Log.e("RNFNotificationUtils", "Failed to get main activity class", e);
       return null;
@@ -18,31 +18,122 @@
  
 package io.invertase.firebase.notifications;
 
+import android.os.Build;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.core.app.NotificationManagerCompat;
 
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.LifecycleEventListener;
 import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactMethod;
 import com.facebook.react.bridge.ReadableArray;
 import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
 import com.google.android.gms.tasks.Tasks;
 import com.google.firebase.iid.FirebaseInstanceId;
 import com.google.firebase.messaging.FirebaseMessaging;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
+import io.invertase.firebase.common.ReactNativeFirebaseEventEmitter;
 import io.invertase.firebase.common.ReactNativeFirebaseModule;
 
 public class ReactNativeFirebaseNotificationsModule extends ReactNativeFirebaseModule {
   private static final String TAG = "Notifications";
 
+  // templates hold compiled intents and resources, registering new ids beyond this is rejected
+  private static final int MAX_TEMPLATES = 64;
+  private static final Map<String, ReactNativeFirebaseNotification> templates = new ConcurrentHashMap<>();
+
   ReactNativeFirebaseNotificationsModule(ReactApplicationContext reactContext) {
     super(reactContext, TAG);
+    reactContext.addLifecycleEventListener(new LifecycleEventListener() {
+      @Override
+      public void onHostResume() {
+        // channels may have been changed in the system settings meanwhile
+        if (Build.VERSION.SDK_INT >= 26) ReactNativeFirebaseNotificationChannelSnapshot.invalidate();
+      }
+
+      @Override
+      public void onHostPause() {
+      }
+
+      @Override
+      public void onHostDestroy() {
+      }
+    });
+  }
+
+  /**
+   * Delivers the messages journaled while JS wasn't running, or whose headless task ended
+   * before handling them, in a single event.
+   */
+  @ReactMethod
+  public void jsInitialised() {
+    // the messages job delivers them instead
+    if (ReactNativeFirebaseBackgroundDispatcher.isMessagesJobRunning()) return;
+
+    Tasks.call(getExecutor(), ReactNativeFirebaseMessageJournal::drain).addOnSuccessListener(entries -> {
+      if (!entries.isEmpty()) {
+        ReactNativeFirebaseEventEmitter.getSharedInstance().sendEvent(
+          ReactNativeFirebaseNotificationSerializer.journaledMessagesToEvent(entries)
+        );
+      }
+    });
+  }
+
+  @ReactMethod
+  public void acknowledgeMessages(ReadableArray journalIdsArray, Promise promise) {
+    long[] journalIds = toJournalIds(journalIdsArray);
+
+    Tasks.call(getExecutor(), () -> {
+      ReactNativeFirebaseMessageJournal.acknowledge(journalIds);
+      return null;
+    }).addOnCompleteListener(task -> {
+      if (task.isSuccessful()) {
+        promise.resolve(null);
+      } else {
+        rejectPromiseWithExceptionMap(promise, task.getException());
+      }
+    });
+  }
+
+  /**
+   * Returns messages JS could not handle to the journal, they are delivered again with the
+   * next drain.
+   */
+  @ReactMethod
+  public void releaseMessages(ReadableArray journalIdsArray, Promise promise) {
+    long[] journalIds = toJournalIds(journalIdsArray);
+
+    Tasks.call(getExecutor(), () -> {
+      ReactNativeFirebaseMessageJournal.release(journalIds);
+      return null;
+    }).addOnCompleteListener(task -> {
+      if (task.isSuccessful()) {
+        promise.resolve(null);
+      } else {
+        rejectPromiseWithExceptionMap(promise, task.getException());
+      }
+    });
+  }
+
+  private static long[] toJournalIds(ReadableArray journalIdsArray) {
+    long[] journalIds = new long[journalIdsArray.size()];
+    for (int i = 0; i < journalIds.length; i++) {
+      journalIds[i] = (long) journalIdsArray.getDouble(i);
+    }
+    return journalIds;
   }
 
   @ReactMethod
@@ -139,14 +230,210 @@ public class ReactNativeFirebaseNotificationsModule extends ReactNativeFirebaseM
       if (task.isSuccessful()) {
         promise.resolve(Objects.requireNonNull(task.getResult()).toWritableMap());
       } else {
-        Exception exception = task.getException();
-        Log.e(TAG, "Error displaying a notification", exception);
-        if (exception instanceof InvalidNotificationParameterException) {
-          InvalidNotificationParameterException notificationParameterException = (InvalidNotificationParameterException) exception;
-          rejectPromiseWithCodeAndMessage(promise, notificationParameterException.getCode(), notificationParameterException.getMessage(), notificationParameterException.getMessage());
-        } else {
-          rejectPromiseWithExceptionMap(promise, exception);
+        rejectPromiseWithNotificationException(promise, task.getException());
+      }
+    });
+  }
+
+  @ReactMethod
+  public void registerNotificationTemplate(String templateId, ReadableMap notificationRaw, Promise promise) {
+    if (!templates.containsKey(templateId) && templates.size() >= MAX_TEMPLATES) {
+      String message = String.format("Too many notification templates, at most %d can be registered.", MAX_TEMPLATES);
+      rejectPromiseWithCodeAndMessage(promise, "template-limit", message, message);
+      return;
+    }
+
+    Tasks.call(getExecutor(), () -> {
+      ReactNativeFirebaseNotification template = ReactNativeFirebaseNotification.fromReadableMap(notificationRaw).compileTemplate();
+      templates.put(templateId, template);
+      return null;
+    }).addOnCompleteListener(task -> {
+      if (task.isSuccessful()) {
+        promise.resolve(null);
+      } else {
+        rejectPromiseWithNotificationException(promise, task.getException());
+      }
+    });
+  }
+
+  @ReactMethod
+  public void unregisterNotificationTemplate(String templateId, Promise promise) {
+    templates.remove(templateId);
+    promise.resolve(null);
+  }
+
+  @ReactMethod
+  public void displayFromTemplate(String templateId, ReadableMap content, Promise promise) {
+    ReactNativeFirebaseNotification template = templates.get(templateId);
+    if (template == null) {
+      String message = String.format("Notification template does not exist for the specified id '%s'.", templateId);
+      rejectPromiseWithCodeAndMessage(promise, "template-not-found", message, message);
+      return;
+    }
+
+    Tasks.call(getExecutor(), () -> {
+      ReactNativeFirebaseNotification nativeFirebaseNotification = template.fromTemplate(content);
+      nativeFirebaseNotification.displayNotification();
+      return nativeFirebaseNotification;
+    }).addOnCompleteListener(task -> {
+      if (task.isSuccessful()) {
+        promise.resolve(Objects.requireNonNull(task.getResult()).getNotificationId());
+      } else {
+        rejectPromiseWithNotificationException(promise, task.getException());
+      }
+    });
+  }
+
+  /**
+   * Updates the progress bar of a displayed notification without rebuilding it.
+   */
+  @ReactMethod
+  public void updateProgress(String notificationId, int current, int max, boolean indeterminate, Promise promise) {
+    Tasks.call(getExecutor(), () -> {
+      getDisplayedNotification(notificationId).updateProgress(current, max, indeterminate);
+      return null;
+    }).addOnCompleteListener(task -> {
+      if (task.isSuccessful()) {
+        promise.resolve(null);
+      } else {
+        rejectPromiseWithNotificationException(promise, task.getException());
+      }
+    });
+  }
+
+  /**
+   * Applies a partial notification to a displayed notification and re-posts it.
+   */
+  @ReactMethod
+  public void patchNotification(String notificationId, ReadableMap partial, Promise promise) {
+    Tasks.call(getExecutor(), () -> {
+      ReactNativeFirebaseNotification nativeFirebaseNotification = getDisplayedNotification(notificationId).patch(partial);
+      nativeFirebaseNotification.displayNotification();
+      return nativeFirebaseNotification;
+    }).addOnCompleteListener(task -> {
+      if (task.isSuccessful()) {
+        promise.resolve(Objects.requireNonNull(task.getResult()).toWritableMap());
+      } else {
+        rejectPromiseWithNotificationException(promise, task.getException());
+      }
+    });
+  }
+
+  @ReactMethod
+  public void cancelNotification(String notificationId, Promise promise) {
+    removeDeliveredNotification(notificationId, promise);
+  }
+
+  @ReactMethod
+  public void cancelAllNotifications(Promise promise) {
+    removeAllDeliveredNotifications(promise);
+  }
+
+  @ReactMethod
+  public void removeDeliveredNotification(String notificationId, Promise promise) {
+    Tasks.call(getExecutor(), () -> {
+      ReactNativeFirebaseNotification.cancel(notificationId);
+      return null;
+    }).addOnCompleteListener(task -> {
+      if (task.isSuccessful()) {
+        promise.resolve(null);
+      } else {
+        rejectPromiseWithExceptionMap(promise, task.getException());
+      }
+    });
+  }
+
+  @ReactMethod
+  public void removeAllDeliveredNotifications(Promise promise) {
+    Tasks.call(getExecutor(), () -> {
+      ReactNativeFirebaseNotification.cancelAll();
+      return null;
+    }).addOnCompleteListener(task -> {
+      if (task.isSuccessful()) {
+        promise.resolve(null);
+      } else {
+        rejectPromiseWithExceptionMap(promise, task.getException());
+      }
+    });
+  }
+
+  private ReactNativeFirebaseNotification getDisplayedNotification(String notificationId) {
+    ReactNativeFirebaseNotification notification = ReactNativeFirebaseNotification.getDisplayed(notificationId);
+    if (notification == null) {
+      throw new InvalidNotificationParameterException(
+        InvalidNotificationParameterException.NOTIFICATION_NOT_FOUND,
+        String.format("No recently displayed notification exists for the specified id '%s'.", notificationId)
+      );
+    }
+
+    return notification;
+  }
+
+  private void rejectPromiseWithNotificationException(Promise promise, Exception exception) {
+    Log.e(TAG, "Error displaying a notification", exception);
+    if (exception instanceof InvalidNotificationParameterException) {
+      InvalidNotificationParameterException notificationParameterException = (InvalidNotificationParameterException) exception;
+      rejectPromiseWithCodeAndMessage(promise, notificationParameterException.getCode(), notificationParameterException.getMessage(), notificationParameterException.getMessage());
+    } else {
+      rejectPromiseWithExceptionMap(promise, exception);
+    }
+  }
+
+  /**
+   * Displays many notifications in a single bridge call and executor task. The promise resolves
+   * with a result for each notification, in order: its notificationId and either
+   * success or the error code and message it failed with.
+   */
+  @ReactMethod
+  public void displayNotifications(ReadableArray notificationsRaw, Promise promise) {
+    Tasks.call(getExecutor(), () -> {
+      // parsing fails per notification, e.g. for an invalid color, and is reported with its result
+      List<ReactNativeFirebaseNotification> notifications = new ArrayList<>(notificationsRaw.size());
+      List<Exception> parseErrors = new ArrayList<>(notificationsRaw.size());
+      for (int i = 0; i < notificationsRaw.size(); i++) {
+        try {
+          ReactNativeFirebaseNotification notification = ReactNativeFirebaseNotification.fromReadableMap(notificationsRaw.getMap(i));
+          notification.fetchImages();
+          notifications.add(notification);
+          parseErrors.add(null);
+        } catch (Exception exception) {
+          notifications.add(null);
+          parseErrors.add(exception);
+        }
+      }
+
+      // the batch waits for images once, a notification only gets what's left of the deadline
+      long imagesDeadline = SystemClock.elapsedRealtime() + ReactNativeFirebaseNotificationImageFetcher.getDeadline();
+      WritableArray results = Arguments.createArray();
+      for (int i = 0; i < notifications.size(); i++) {
+        ReactNativeFirebaseNotification notification = notifications.get(i);
+        WritableMap result = Arguments.createMap();
+        result.putString("notificationId", notificationsRaw.getMap(i).getString("notificationId"));
+
+        try {
+          if (notification == null) throw parseErrors.get(i);
+          notification.displayNotification(imagesDeadline);
+          result.putBoolean("success", true);
+        } catch (Exception exception) {
+          Log.e(TAG, "Error displaying a notification", exception);
+          result.putBoolean("success", false);
+          if (exception instanceof InvalidNotificationParameterException) {
+            result.putString("code", ((InvalidNotificationParameterException) exception).getCode());
+          } else {
+            result.putString("code", "unknown");
+          }
+          result.putString("message", exception.getMessage());
         }
+
+        results.pushMap(result);
+      }
+
+      return results;
+    }).addOnCompleteListener(task -> {
+      if (task.isSuccessful()) {
+        promise.resolve(task.getResult());
+      } else {
+        rejectPromiseWithExceptionMap(promise, task.getException());
       }
     });
   }
@@ -192,6 +479,21 @@ public class ReactNativeFirebaseNotificationsModule extends ReactNativeFirebaseM
     promise.resolve(null);
   }
 
+  @ReactMethod
+  public void syncChannels(ReadableArray channelGroupsArray, ReadableArray channelsArray, ReadableMap options, Promise promise) {
+    boolean deleteUnknown = options.hasKey("deleteUnknown") && options.getBoolean("deleteUnknown");
+
+    Tasks.call(getExecutor(), () ->
+      ReactNativeFirebaseNotificationChannel.syncChannels(channelGroupsArray, channelsArray, deleteUnknown)
+    ).addOnCompleteListener(task -> {
+      if (task.isSuccessful()) {
+        promise.resolve(task.getResult());
+      } else {
+        rejectPromiseWithExceptionMap(promise, task.getException());
+      }
+    });
+  }
+
   @ReactMethod
   public void deleteChannelGroup(String channelId, Promise promise) {
     try {
@@ -237,6 +539,17 @@ public class ReactNativeFirebaseNotificationsModule extends ReactNativeFirebaseM
     promise.resolve(Collections.emptyList());
   }
 
+  @ReactMethod
+  public void getChannelsSince(double version, Promise promise) {
+    try {
+      promise.resolve(ReactNativeFirebaseNotificationChannel.getChannelsSince((long) version));
+      return;
+    } catch (Throwable t) {
+      // do nothing - most likely a NoSuchMethodError for < v4 support lib
+    }
+    promise.resolve(null);
+  }
+
   @ReactMethod
   public void getChannelGroup(String channelGroupId, Promise promise) {
     try {
@@ -259,6 +572,40 @@ public class ReactNativeFirebaseNotificationsModule extends ReactNativeFirebaseM
     promise.resolve(Collections.emptyList());
   }
 
+  @ReactMethod
+  public void getMetrics(Promise promise) {
+    WritableMap imageMetrics = Arguments.createMap();
+    imageMetrics.putDouble("coalescedFetches", ReactNativeFirebaseNotificationImageFetcher.getCoalescedFetchCount());
+
+    WritableMap resourceMetrics = Arguments.createMap();
+    resourceMetrics.putDouble("cacheHits", ReactNativeFirebaseNotificationUtils.getResourceIdCacheHits());
+    resourceMetrics.putDouble("cacheMisses", ReactNativeFirebaseNotificationUtils.getResourceIdCacheMisses());
+
+    WritableMap conversionMetrics = Arguments.createMap();
+    conversionMetrics.putDouble("cacheHits", ReactNativeFirebaseNotificationUtils.getConversionCacheHits());
+    conversionMetrics.putDouble("cacheMisses", ReactNativeFirebaseNotificationUtils.getConversionCacheMisses());
+
+    WritableMap updateMetrics = Arguments.createMap();
+    updateMetrics.putDouble("coalescedUpdates", ReactNativeFirebaseNotificationUpdateScheduler.getCoalescedUpdateCount());
+
+    WritableMap postMetrics = Arguments.createMap();
+    postMetrics.putInt("queueDepth", ReactNativeFirebaseNotificationPostQueue.getQueueDepth());
+    postMetrics.putDouble("dropped", ReactNativeFirebaseNotificationPostQueue.getDroppedCount());
+
+    WritableMap messageMetrics = Arguments.createMap();
+    messageMetrics.putDouble("duplicates", ReactNativeFirebaseMessageDeduplicator.getDuplicateCount());
+    messageMetrics.putDouble("collapsed", ReactNativeFirebaseMessageJournal.getCollapsedCount());
+
+    WritableMap metrics = Arguments.createMap();
+    metrics.putMap("images", imageMetrics);
+    metrics.putMap("resources", resourceMetrics);
+    metrics.putMap("conversions", conversionMetrics);
+    metrics.putMap("updates", updateMetrics);
+    metrics.putMap("posts", postMetrics);
+    metrics.putMap("messages", messageMetrics);
+    promise.resolve(metrics);
+  }
+
   @Override
   public Map<String, Object> getConstants() {
     final Map<String, Object> constants = new HashMap<>();
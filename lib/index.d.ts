@@ -1449,6 +1449,227 @@ export namespace Notifications {
     description?: string;
   }
 
+  /**
+   * The variable content displayed with a registered notification template, see `displayFromTemplate`.
+   */
+  export interface NotificationTemplateContent {
+    /**
+     * A unique identifier for the displayed notification. One is generated if not provided.
+     */
+    notificationId?: string;
+
+    /**
+     * Replaces the title of the template.
+     */
+    title?: string;
+
+    /**
+     * Replaces the subtitle of the template.
+     */
+    subtitle?: string;
+
+    /**
+     * Replaces the body of the template.
+     */
+    body?: string;
+
+    /**
+     * Replaces the data of the template.
+     */
+    data?: { [key: string]: string };
+  }
+
+  /**
+   * The channel changes returned by `getChannelsSince`.
+   */
+  export interface AndroidChannelsDelta {
+    /**
+     * The current snapshot version, pass it to the next `getChannelsSince` call. Versions are
+     * opaque and only valid within the app process that returned them, others get a reset.
+     */
+    version: number;
+
+    /**
+     * If true, `channels` contains every channel and replaces all channels from earlier calls.
+     */
+    reset: boolean;
+
+    /**
+     * Channels added or changed since the requested version.
+     */
+    channels: AndroidChannel[];
+
+    /**
+     * Ids of the channels removed since the requested version.
+     */
+    removedChannelIds: string[];
+  }
+
+  /**
+   * What `syncChannels` changed on the device.
+   */
+  export interface AndroidChannelsSyncResult {
+    /**
+     * True if the configuration was already applied and nothing was compared or submitted.
+     */
+    skipped: boolean;
+
+    groupsCreated: number;
+
+    groupsDeleted: number;
+
+    channelsCreated: number;
+
+    /**
+     * Existing channels whose name, description or group were updated.
+     */
+    channelsUpdated: number;
+
+    channelsDeleted: number;
+  }
+
+  /**
+   * A data message received while the app is in the foreground, see `onMessage`.
+   */
+  export interface RemoteMessage {
+    messageId?: string;
+
+    messageType?: string;
+
+    collapseKey?: string;
+
+    from?: string;
+
+    to?: string;
+
+    /**
+     * The message time to live in seconds.
+     */
+    ttl: number;
+
+    /**
+     * When the message was sent, in milliseconds since the epoch.
+     */
+    sentTime: number;
+
+    data: { [key: string]: string };
+  }
+
+  /**
+   * The outcome of displaying a single notification with `displayNotifications`.
+   */
+  export interface DisplayNotificationResult {
+    /**
+     * The id of the notification this result belongs to, null if an invalid notification
+     * didn't have one.
+     */
+    notificationId: string | null;
+
+    /**
+     * Whether the notification was displayed.
+     */
+    success: boolean;
+
+    /**
+     * The error code if the notification could not be displayed, e.g. `channel-not-found`,
+     * or `invalid-notification` if it failed validation.
+     */
+    code?: string;
+
+    /**
+     * The error message if the notification could not be displayed.
+     */
+    message?: string;
+  }
+
+  /**
+   * Runtime counters of the native Android notification pipeline, returned from `getMetrics`.
+   *
+   * @android
+   */
+  export interface AndroidNotificationMetrics {
+    /**
+     * Notification image (largeIcon / BigPicture) loading.
+     */
+    images: {
+      /**
+       * The number of image loads avoided because an identical load was already in flight.
+       */
+      coalescedFetches: number;
+    };
+
+    /**
+     * Resource id lookups by name (icons, sounds, localization keys).
+     */
+    resources: {
+      /**
+       * Lookups answered from the in-memory cache.
+       */
+      cacheHits: number;
+
+      /**
+       * Lookups that had to call `Resources.getIdentifier`.
+       */
+      cacheMisses: number;
+    };
+
+    /**
+     * Color parsing and sound URI resolution for notifications and channels.
+     */
+    conversions: {
+      /**
+       * Conversions answered from the in-memory cache.
+       */
+      cacheHits: number;
+
+      /**
+       * Conversions that had to be computed.
+       */
+      cacheMisses: number;
+    };
+
+    /**
+     * Notification updates posted to the system.
+     */
+    updates: {
+      /**
+       * In-progress updates which were replaced by a newer update before being posted.
+       */
+      coalescedUpdates: number;
+    };
+
+    /**
+     * The app-wide notification posting queue.
+     */
+    posts: {
+      /**
+       * The number of notifications currently waiting for the post rate limit.
+       */
+      queueDepth: number;
+
+      /**
+       * The number of notifications dropped because the queue was full.
+       */
+      dropped: number;
+    };
+
+    /**
+     * Messages received from FCM.
+     */
+    messages: {
+      /**
+       * Messages dropped because a message with the same `messageId` was received before.
+       */
+      duplicates: number;
+
+      /**
+       * Background messages dropped before reaching JS because a newer message with the same
+       * `collapseKey` arrived.
+       */
+      collapsed: number;
+    };
+  }
+
   /**
    *
    * The Firebase Notifications service interface.
@@ -1729,6 +1950,39 @@ export namespace Notifications {
      */
     setBackgroundNotificationHandler(handler: (message: Notification) => any) : () => void;
 
+    /**
+     * On Android, set a handler which is called with the data messages received while the app is
+     * in the background or terminated.
+     *
+     * Messages arriving close together (within `notification_android_message_batch_window`
+     * milliseconds, up to `notification_android_message_batch_size` messages) are delivered in
+     * a single headless task, so the handler is called with an array. The task timeout grows by
+     * `notification_android_headless_task_timeout_per_message` for every additional message.
+     *
+     * Messages are kept in a journal on the device until the promise returned by the handler
+     * resolves. Messages which arrived before JS was ready, or whose task was stopped before the
+     * handler finished, are passed to the handler again the next time the app's JS starts.
+     *
+     * When Android doesn't allow the app to start a background service, e.g. for normal priority
+     * messages on Android 8+, the messages are handed over by a JobScheduler job instead. Setting
+     * `notification_android_message_job_deadline` (milliseconds) lets that job wait up to so long
+     * for a network connection and batch the messages arriving meanwhile.
+     *
+     * Like `setBackgroundNotificationHandler`, this method must be called **outside** of your
+     * application lifecycle. It's a no-op on iOS.
+     *
+     * #### Example
+     *
+     * ```js
+     * firebase.notifications().setBackgroundMessageHandler(async (remoteMessages) => {
+     *   await syncInbox(remoteMessages.map(remoteMessage => remoteMessage.data));
+     * });
+     * ```
+     *
+     * @android
+     */
+    setBackgroundMessageHandler(handler: (messages: RemoteMessage[]) => Promise<any>): void;
+
     /**
      * Apps can subscribe to a topic, which allows the FCM server to send targeted messages to only those
      * devices subscribed to that topic.
@@ -1812,6 +2066,38 @@ export namespace Notifications {
 
     createChannelGroups(channelGroups: AndroidChannelGroup[]): Promise<void>;
 
+    /**
+     * Makes the app's channel groups and channels match the given configuration, creating or
+     * updating only what differs from the device. Intended to be called on every app start in
+     * place of `createChannelGroups` and `createChannels`.
+     *
+     * The last applied configuration is remembered natively; if it hasn't changed and all of
+     * its channels still exist the call resolves straight away with `skipped: true`.
+     *
+     * Android only allows the name, description and (unset) group of an existing channel to be
+     * changed, other settings of an existing channel are left as the user has them.
+     *
+     * #### Example
+     *
+     * ```js
+     * await firebase.notifications().syncChannels(
+     *   [{ channelGroupId: 'chat', name: 'Chat' }],
+     *   [{ channelId: 'messages', name: 'Messages', groupId: 'chat' }],
+     *   { deleteUnknown: true },
+     * );
+     * ```
+     *
+     * @platform android
+     * @param channelGroups Every channel group the app uses.
+     * @param channels Every channel the app uses.
+     * @param options Set `deleteUnknown` to delete channels and channel groups which aren't part of the configuration.
+     */
+    syncChannels(
+      channelGroups: AndroidChannelGroup[],
+      channels: AndroidChannel[],
+      options?: { deleteUnknown?: boolean },
+    ): Promise<AndroidChannelsSyncResult>;
+
     /**
      * Deletes a channel by ID.
      *
@@ -1851,6 +2137,142 @@ export namespace Notifications {
      */
     displayNotification(notification: Notification): Promise<string>;
 
+    /**
+     * Displays multiple notifications in a single operation.
+     *
+     * On Android all notifications are built in one native pass and cross the bridge once.
+     * A notification failing validation or to display does not stop the others; the returned results,
+     * in the same order as `notifications`, report the outcome of each one.
+     *
+     * See `displayNotification` for more information.
+     *
+     * #### Example
+     *
+     * ```js
+     * const results = await firebase.notifications().displayNotifications(unreadThreads.map(thread => ({
+     *   title: thread.title,
+     *   body: thread.lastMessage,
+     *   android: {
+     *     channelId: 'messages',
+     *   },
+     * })));
+     * ```
+     *
+     * @param notifications An array of `Notification` interfaces.
+     */
+    displayNotifications(notifications: Notification[]): Promise<DisplayNotificationResult[]>;
+
+    /**
+     * Registers a notification as a template. The notification is validated once and, on Android,
+     * its static parts (channel, sound, icons, color, actions and their intents) are resolved
+     * natively once and reused by every `displayFromTemplate` call.
+     *
+     * Registering a template with an existing id replaces it. At most 64 templates can be
+     * registered, unregister templates which are no longer used with `unregisterNotificationTemplate`.
+     * Returns the template id.
+     *
+     * #### Example
+     *
+     * ```js
+     * await firebase.notifications().registerNotificationTemplate('chat-message', {
+     *   body: 'New message',
+     *   android: {
+     *     channelId: 'messages',
+     *     smallIcon: 'ic_chat',
+     *     color: AndroidColor.BLUE,
+     *   },
+     * });
+     * ```
+     *
+     * @param templateId A unique id for the template.
+     * @param notification A `Notification` interface used as the template.
+     */
+    registerNotificationTemplate(templateId: string, notification: Notification): Promise<string>;
+
+    /**
+     * Removes a template registered with `registerNotificationTemplate`. Notifications already
+     * displayed from it are not affected.
+     *
+     * @param templateId The id the template was registered with.
+     */
+    unregisterNotificationTemplate(templateId: string): Promise<void>;
+
+    /**
+     * Displays a notification from a template registered with `registerNotificationTemplate`,
+     * sending only the content which changes between notifications.
+     *
+     * Returns the notification id.
+     *
+     * #### Example
+     *
+     * ```js
+     * await firebase.notifications().displayFromTemplate('chat-message', {
+     *   title: message.sender,
+     *   body: message.text,
+     *   data: { threadId: message.threadId },
+     * });
+     * ```
+     *
+     * @param templateId The id the template was registered with.
+     * @param content A `NotificationTemplateContent` interface.
+     */
+    displayFromTemplate(templateId: string, content?: NotificationTemplateContent): Promise<string>;
+
+    /**
+     * Updates the progress bar of a displayed notification. Only the progress of the
+     * notification is changed natively: images, actions and intents are not rebuilt, which
+     * makes this much cheaper than displaying the whole notification again.
+     *
+     * Rapid updates are coalesced, only the newest state is posted within each update interval.
+     * A completed progress bar (`current` equal to `max`) is always posted immediately.
+     *
+     * Rejects with `notification-not-found` if the notification was not displayed recently.
+     *
+     * #### Example
+     *
+     * ```js
+     * task.on('state_changed', snapshot => {
+     *   firebase.notifications().updateProgress('upload', snapshot.bytesTransferred, snapshot.totalBytes);
+     * });
+     * ```
+     *
+     * @platform android
+     * @param notificationId The id of a displayed notification.
+     * @param current The current progress.
+     * @param max The maximum progress.
+     * @param indeterminate Whether the progress is indeterminate, defaults to false.
+     */
+    updateProgress(
+      notificationId: string,
+      current: number,
+      max: number,
+      indeterminate?: boolean,
+    ): Promise<void>;
+
+    /**
+     * Applies a partial notification to a displayed notification and displays the result.
+     * Top level keys replace the displayed values and the `android` options are merged key
+     * by key. Loaded images, actions and intents are reused unless the patch changes the
+     * channel, sound or actions.
+     *
+     * Resolves with the updated notification. Rejects with `notification-not-found` if the
+     * notification was not displayed recently.
+     *
+     * #### Example
+     *
+     * ```js
+     * await firebase.notifications().patchNotification('upload', {
+     *   body: 'Upload complete',
+     *   android: { ongoing: false },
+     * });
+     * ```
+     *
+     * @platform android
+     * @param notificationId The id of a displayed notification.
+     * @param notification The partial `Notification` to apply.
+     */
+    patchNotification(notificationId: string, notification: Partial<Notification>): Promise<Notification>;
+
     /**
      * Returns a single `AndroidChannel` by id.
      *
@@ -1865,6 +2287,35 @@ export namespace Notifications {
      */
     getChannels(): Promise<AndroidChannel[]>;
 
+    /**
+     * Returns the channels which were added or changed, and the ids of the channels which were
+     * removed, since the given snapshot version. Pass the returned `version` to the next call,
+     * or `0` to get every channel.
+     *
+     * Channels are kept in a native snapshot which is reloaded at most once a second, so this
+     * is cheap to poll for changes the user makes in the system settings. If `reset` is true
+     * the delta contains every channel and replaces any channels kept from earlier calls.
+     *
+     * #### Example
+     *
+     * ```js
+     * let channels = {};
+     * let version = 0;
+     *
+     * async function pollChannels() {
+     *   const delta = await firebase.notifications().getChannelsSince(version);
+     *   if (delta.reset) channels = {};
+     *   delta.removedChannelIds.forEach(channelId => delete channels[channelId]);
+     *   delta.channels.forEach(channel => (channels[channel.channelId] = channel));
+     *   version = delta.version;
+     * }
+     * ```
+     *
+     * @platform android
+     * @param version A version returned by a previous call, defaults to `0`.
+     */
+    getChannelsSince(version?: number): Promise<AndroidChannelsDelta>;
+
     getChannelGroup(channelGroupId: string): Promise<AndroidChannelGroup | null>;
 
     getChannelGroups(): Promise<AndroidChannelGroup[]>;
@@ -1872,12 +2323,32 @@ export namespace Notifications {
     // todo null if no badge?
     getBadge(): Promise<number | null>;
 
+    /**
+     * Returns runtime counters of the native notification pipeline, e.g. how many image
+     * downloads were shared between notifications.
+     *
+     * Resolves with an empty object on iOS.
+     *
+     * @android
+     */
+    getMetrics(): Promise<AndroidNotificationMetrics>;
+
     getInitialNotification(): Promise<Notification | null>;
 
     getScheduledNotifications(): Promise<Notification[]>;
 
     onNotification(observer: NotificationObserver): Function;
 
+    /**
+     * Called with data messages received while the app is in the foreground. These are
+     * delivered straight to JS, without starting the headless background task.
+     *
+     * Returns an unsubscribe function.
+     *
+     * @param listener Called with each `RemoteMessage`.
+     */
+    onMessage(listener: (message: RemoteMessage) => any): () => void;
+
     onNotificationDisplayed(observer: NotificationObserver): Function;
 
     onNotificationOpened(observer: NotificationObserver): Function;
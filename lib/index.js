@@ -23,17 +23,21 @@ import {
 } from '@react-native-firebase/app/lib/internal';
 
 import {
+  hasOwnProperty,
   isAndroid,
   isFunction,
   isNumber,
   isString,
   isIOS,
   isArray,
+  isBoolean,
   isNull,
+  isObject,
   isUndefined,
 } from '@react-native-firebase/app/lib/common';
 
 import validateNotification from './validateNotification';
+import validateNotificationTemplateContent from './validateNotificationTemplateContent';
 import validateSchedule from './validateSchedule';
 import validateAndroidChannel from './validateAndroidChannel';
 import validateAndroidChannelGroup from './validateAndroidChannelGroup';
@@ -68,13 +72,27 @@ const namespace = 'notifications';
 
 const nativeModuleName = 'RNFBNotificationsModule';
 
+let backgroundMessageHandler = null;
+
+// validated options of recently displayed notifications, patches are applied to these
+const MAX_RETAINED_NOTIFICATIONS = 16;
+
+// matches the limit of templates registered natively on Android
+const MAX_TEMPLATES = 64;
+
 class FirebaseNotificationsModule extends FirebaseModule {
 
   constructor(...args) {
     super(...args);
-    if (isIOS){
-      this.native.jsInitialised();
+    this._templates = {};
+    this._displayed = new Map();
+    if (isAndroid) {
+      // messages journaled while JS wasn't running, see setBackgroundMessageHandler
+      this.emitter.addListener('messaging_messages_pending', ({ messages, journalIds }) =>
+        this._handleBackgroundMessages(messages, journalIds),
+      );
     }
+    this.native.jsInitialised();
     this._isAutoInitEnabled = this.native.isAutoInitEnabled != null ? this.native.isAutoInitEnabled : true;
     this._isRegisteredForRemoteNotifications = this.native.isRegisteredForRemoteNotifications != null
             ? this.native.isRegisteredForRemoteNotifications
@@ -226,6 +244,44 @@ class FirebaseNotificationsModule extends FirebaseModule {
     AppRegistry.registerHeadlessTask('ReactNativeFirebaseNotificationHeadlessTask', () => handler);
   }
 
+  /**
+   * @platform android
+   */
+  setBackgroundMessageHandler(handler) {
+    if (!isFunction(handler)) {
+      throw new Error(
+        "firebase.notifications().setBackgroundMessageHandler(*) 'handler' expected a function.",
+      );
+    }
+
+    if (isIOS) {
+      return;
+    }
+
+    backgroundMessageHandler = handler;
+
+    // messages received in the background are delivered in batches
+    AppRegistry.registerHeadlessTask(
+      'ReactNativeFirebaseMessagingHeadlessTask',
+      () => ({ messages, journalIds }) => this._handleBackgroundMessages(messages, journalIds),
+    );
+  }
+
+  _handleBackgroundMessages(messages, journalIds = []) {
+    if (!backgroundMessageHandler) {
+      // returned to the native journal, delivered again with the next drain
+      return this.native.releaseMessages(journalIds);
+    }
+
+    // only acknowledged messages are removed from the native journal
+    return Promise.resolve()
+      .then(() => backgroundMessageHandler(messages))
+      .then(
+        () => this.native.acknowledgeMessages(journalIds),
+        error => this.native.releaseMessages(journalIds).then(() => Promise.reject(error)),
+      );
+  }
+
   subscribeToTopic(topic) {
     if (!isString(topic)) {
       throw new Error("firebase.messaging().subscribeToTopic(*) 'topic' expected a string value.");
@@ -354,6 +410,72 @@ class FirebaseNotificationsModule extends FirebaseModule {
     return this.native.createChannelGroups(options);
   }
 
+  /**
+   * @platform android
+   */
+  syncChannels(channelGroups, channels, options = {}) {
+    if (!isArray(channelGroups)) {
+      throw new Error(
+        "firebase.notifications().syncChannels(*) 'channelGroups' expected an array of AndroidChannelGroup.",
+      );
+    }
+
+    if (!isArray(channels)) {
+      throw new Error(
+        "firebase.notifications().syncChannels(_, *) 'channels' expected an array of AndroidChannel.",
+      );
+    }
+
+    if (!isObject(options)) {
+      throw new Error("firebase.notifications().syncChannels(_, _, *) 'options' expected an object.");
+    }
+
+    if (!isUndefined(options.deleteUnknown) && !isBoolean(options.deleteUnknown)) {
+      throw new Error(
+        "firebase.notifications().syncChannels(_, _, *) 'options.deleteUnknown' expected a boolean value.",
+      );
+    }
+
+    let groupOptions = [];
+    try {
+      for (let i = 0; i < channelGroups.length; i++) {
+        groupOptions[i] = validateAndroidChannelGroup(channelGroups[i]);
+      }
+    } catch (e) {
+      throw new Error(
+        `firebase.notifications().syncChannels(*) 'channelGroups' a channel group is invalid: ${
+        e.message
+        }`,
+      );
+    }
+
+    let channelOptions = [];
+    try {
+      for (let i = 0; i < channels.length; i++) {
+        channelOptions[i] = validateAndroidChannel(channels[i]);
+      }
+    } catch (e) {
+      throw new Error(
+        `firebase.notifications().syncChannels(_, *) 'channels' a channel is invalid: ${e.message}`,
+      );
+    }
+
+    if (isIOS) {
+      return Promise.resolve({
+        skipped: true,
+        groupsCreated: 0,
+        groupsDeleted: 0,
+        channelsCreated: 0,
+        channelsUpdated: 0,
+        channelsDeleted: 0,
+      });
+    }
+
+    return this.native.syncChannels(groupOptions, channelOptions, {
+      deleteUnknown: options.deleteUnknown === true,
+    });
+  }
+
   deleteChannel(channelId) {
     if (!isString(channelId)) {
       throw new Error(
@@ -391,10 +513,282 @@ class FirebaseNotificationsModule extends FirebaseModule {
     }
 
     return this.native.displayNotification(options).then(() => {
+      this._retainDisplayed(options);
       return options.notificationId;
     });
   }
 
+  _retainDisplayed(options) {
+    // re-inserting makes it the most recent
+    this._displayed.delete(options.notificationId);
+    this._displayed.set(options.notificationId, options);
+
+    if (this._displayed.size > MAX_RETAINED_NOTIFICATIONS) {
+      this._displayed.delete(this._displayed.keys().next().value);
+    }
+  }
+
+  /**
+   * @platform android
+   */
+  displayNotifications(notifications) {
+    if (!isArray(notifications)) {
+      throw new Error(
+        "firebase.notifications().displayNotifications(*) 'notifications' expected an array of Notification.",
+      );
+    }
+
+    // an invalid notification fails on its own, the valid ones are still displayed
+    const results = [];
+    const options = [];
+    const indexes = [];
+    for (let i = 0; i < notifications.length; i++) {
+      try {
+        options.push(validateNotification(notifications[i]));
+        indexes.push(i);
+      } catch (e) {
+        const notification = notifications[i];
+        results[i] = {
+          notificationId:
+            isObject(notification) && isString(notification.notificationId)
+              ? notification.notificationId
+              : null,
+          success: false,
+          code: 'invalid-notification',
+          message: `firebase.notifications().displayNotifications(*) 'notifications[${i}]' ${e.message}`,
+        };
+      }
+    }
+
+    const displayed = isIOS
+      ? Promise.all(
+          options.map(option =>
+            this.native
+              .displayNotification(option)
+              .then(() => ({ notificationId: option.notificationId, success: true }))
+              .catch(e => ({
+                notificationId: option.notificationId,
+                success: false,
+                code: e.code,
+                message: e.message,
+              })),
+          ),
+        )
+      : options.length
+      ? this.native.displayNotifications(options)
+      : Promise.resolve([]);
+
+    return displayed.then(displayedResults => {
+      for (let i = 0; i < displayedResults.length; i++) {
+        results[indexes[i]] = displayedResults[i];
+        if (displayedResults[i].success) this._retainDisplayed(options[i]);
+      }
+      return results;
+    });
+  }
+
+  registerNotificationTemplate(templateId, notification) {
+    if (!isString(templateId) || !templateId) {
+      throw new Error(
+        "firebase.notifications().registerNotificationTemplate(*) 'templateId' expected a string value.",
+      );
+    }
+
+    let options;
+    try {
+      options = validateNotification(notification);
+    } catch (e) {
+      throw new Error(`firebase.notifications().registerNotificationTemplate(_, *) ${e.message}`);
+    }
+
+    if (
+      !hasOwnProperty(this._templates, templateId) &&
+      Object.keys(this._templates).length >= MAX_TEMPLATES
+    ) {
+      return Promise.reject(
+        new Error(
+          `firebase.notifications().registerNotificationTemplate(*) at most ${MAX_TEMPLATES} templates can be registered.`,
+        ),
+      );
+    }
+
+    if (isIOS) {
+      this._templates[templateId] = options;
+      return Promise.resolve(templateId);
+    }
+
+    return this.native.registerNotificationTemplate(templateId, options).then(() => {
+      // kept so notifications displayed from it can be patched
+      this._templates[templateId] = options;
+      return templateId;
+    });
+  }
+
+  unregisterNotificationTemplate(templateId) {
+    if (!isString(templateId) || !templateId) {
+      throw new Error(
+        "firebase.notifications().unregisterNotificationTemplate(*) 'templateId' expected a string value.",
+      );
+    }
+
+    delete this._templates[templateId];
+
+    if (isIOS) {
+      return Promise.resolve();
+    }
+
+    return this.native.unregisterNotificationTemplate(templateId);
+  }
+
+  displayFromTemplate(templateId, content = {}) {
+    if (!isString(templateId) || !templateId) {
+      throw new Error(
+        "firebase.notifications().displayFromTemplate(*) 'templateId' expected a string value.",
+      );
+    }
+
+    let options;
+    try {
+      options = validateNotificationTemplateContent(content);
+    } catch (e) {
+      throw new Error(`firebase.notifications().displayFromTemplate(_, *) ${e.message}`);
+    }
+
+    if (isIOS) {
+      const template = this._templates[templateId];
+      if (!template) {
+        return Promise.reject(
+          new Error(
+            `firebase.notifications().displayFromTemplate(*) no template registered for '${templateId}'.`,
+          ),
+        );
+      }
+
+      return this.native.displayNotification({ ...template, ...options }).then(() => {
+        return options.notificationId;
+      });
+    }
+
+    return this.native.displayFromTemplate(templateId, options).then(notificationId => {
+      const template = this._templates[templateId];
+      if (template) this._retainDisplayed({ ...template, ...options, notificationId });
+      return notificationId;
+    });
+  }
+
+  /**
+   * @platform android
+   */
+  updateProgress(notificationId, current, max, indeterminate = false) {
+    if (!isString(notificationId) || !notificationId) {
+      throw new Error(
+        "firebase.notifications().updateProgress(*) 'notificationId' expected a string value.",
+      );
+    }
+
+    if (!isNumber(current)) {
+      throw new Error("firebase.notifications().updateProgress(_, *) 'current' expected a number value.");
+    }
+
+    if (!isNumber(max)) {
+      throw new Error("firebase.notifications().updateProgress(_, _, *) 'max' expected a number value.");
+    }
+
+    if (max < current) {
+      throw new Error(
+        "firebase.notifications().updateProgress(_, *) 'current' current progress can not exceed max progress value.",
+      );
+    }
+
+    if (!isBoolean(indeterminate)) {
+      throw new Error(
+        "firebase.notifications().updateProgress(_, _, _, *) 'indeterminate' expected a boolean value.",
+      );
+    }
+
+    if (isIOS) {
+      return Promise.resolve();
+    }
+
+    const displayed = this._displayed.get(notificationId);
+    if (displayed) {
+      displayed.android = { ...displayed.android, progress: { max, current, indeterminate } };
+    }
+
+    return this.native.updateProgress(notificationId, current, max, indeterminate);
+  }
+
+  /**
+   * @platform android
+   */
+  patchNotification(notificationId, notification) {
+    if (!isString(notificationId) || !notificationId) {
+      throw new Error(
+        "firebase.notifications().patchNotification(*) 'notificationId' expected a string value.",
+      );
+    }
+
+    if (!isObject(notification)) {
+      throw new Error(
+        "firebase.notifications().patchNotification(_, *) 'notification' expected an object value.",
+      );
+    }
+
+    if (notification.android !== undefined && !isObject(notification.android)) {
+      throw new Error(
+        "firebase.notifications().patchNotification(_, *) 'notification.android' expected an object value.",
+      );
+    }
+
+    if (isIOS) {
+      return Promise.resolve(null);
+    }
+
+    const displayed = this._displayed.get(notificationId);
+    if (!displayed) {
+      return Promise.reject(
+        new Error(
+          `firebase.notifications().patchNotification(*) no recently displayed notification exists for '${notificationId}'.`,
+        ),
+      );
+    }
+
+    // the patch is applied the way it is natively: android options are merged, the rest replaced
+    const patch = { ...notification };
+    const androidPatch = patch.android || {};
+    delete patch.notificationId;
+    delete patch.android;
+    let options;
+    try {
+      options = validateNotification({
+        ...displayed,
+        ...patch,
+        notificationId,
+        android: { ...displayed.android, ...androidPatch },
+      });
+    } catch (e) {
+      throw new Error(`firebase.notifications().patchNotification(_, *) ${e.message}`);
+    }
+
+    // only the patched options are sent, in their validated form
+    const partial = {};
+    Object.keys(patch).forEach(key => {
+      if (hasOwnProperty(options, key)) partial[key] = options[key];
+    });
+
+    if (notification.android) {
+      partial.android = {};
+      Object.keys(androidPatch).forEach(key => {
+        if (hasOwnProperty(options.android, key)) partial.android[key] = options.android[key];
+      });
+    }
+
+    return this.native.patchNotification(notificationId, partial).then(result => {
+      this._retainDisplayed(options);
+      return result;
+    });
+  }
+
   getBadge() {
     return this.native.getBadge();
   }
@@ -421,6 +815,23 @@ class FirebaseNotificationsModule extends FirebaseModule {
     return this.native.getChannels();
   }
 
+  /**
+   * @platform android
+   */
+  getChannelsSince(version = 0) {
+    if (!isNumber(version) || version < 0) {
+      throw new Error(
+        "firebase.notifications().getChannelsSince(*) 'version' expected a positive number value.",
+      );
+    }
+
+    if (isIOS) {
+      return Promise.resolve({ version: 0, reset: false, channels: [], removedChannelIds: [] });
+    }
+
+    return this.native.getChannelsSince(version);
+  }
+
   getChannelGroup(channelGroupId) {
     if (!isString(channelGroupId)) {
       throw new Error(
@@ -443,6 +854,17 @@ class FirebaseNotificationsModule extends FirebaseModule {
     return this.native.getChannelGroups();
   }
 
+  /**
+   * @platform android
+   */
+  getMetrics() {
+    if (isIOS) {
+      return Promise.resolve({});
+    }
+
+    return this.native.getMetrics();
+  }
+
   getInitialNotification() {
     return this.native.getInitialNotification();
   }
@@ -462,6 +884,17 @@ class FirebaseNotificationsModule extends FirebaseModule {
     };
   }
 
+  onMessage(listener) {
+    if (!isFunction(listener)) {
+      throw new Error("firebase.notifications().onMessage(*) 'listener' expected a function.");
+    }
+
+    const subscription = this.emitter.addListener('messaging_message_received', listener);
+    return () => {
+      subscription.remove();
+    };
+  }
+
   onNotificationDisplayed(observer) {
     if (!isFunction(observer)) {
       throw new Error(
@@ -544,6 +977,8 @@ export default createModuleNamespace({
   nativeModuleName,
   nativeEvents: [
     'messaging_token_refresh',
+    'messaging_message_received',
+    'messaging_messages_pending',
     'notifications_notification_received',
     'notifications_notification_displayed',
     'notifications_notification_opened'
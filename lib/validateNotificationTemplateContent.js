@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2019-present Madhusudan Sapkota & Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this library except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+import {
+  generateFirestoreId,
+  hasOwnProperty,
+  isObject,
+  isString,
+} from '@react-native-firebase/app/lib/common';
+
+/**
+ * Validates the variable content displayed with a registered notification template.
+ */
+export default function validateNotificationTemplateContent(content) {
+  if (!isObject(content)) {
+    throw new Error("'content' expected an object value.");
+  }
+
+  const out = {};
+
+  /**
+   * notificationId
+   */
+  if (hasOwnProperty(content, 'notificationId')) {
+    if (!isString(content.notificationId) || !content.notificationId) {
+      throw new Error(
+        "'content.notificationId' invalid notification ID, expected a unique string value.",
+      );
+    }
+
+    out.notificationId = content.notificationId;
+  } else {
+    out.notificationId = generateFirestoreId();
+  }
+
+  /**
+   * title, subtitle & body
+   */
+  const textKeys = ['title', 'subtitle', 'body'];
+  for (let i = 0; i < textKeys.length; i++) {
+    const key = textKeys[i];
+
+    if (hasOwnProperty(content, key)) {
+      if (!isString(content[key])) {
+        throw new Error(`'content.${key}' expected a string value.`);
+      }
+
+      out[key] = content[key];
+    }
+  }
+
+  /**
+   * data
+   */
+  if (hasOwnProperty(content, 'data')) {
+    if (!isObject(content.data)) {
+      throw new Error("'content.data' expected an object value containing key/value pairs.");
+    }
+
+    const entries = Object.entries(content.data);
+
+    for (let i = 0; i < entries.length; i++) {
+      const [key, value] = entries[i];
+
+      if (!isString(value)) {
+        throw new Error(`'content.data' value for key "${key}" is invalid, expected a string value.`);
+      }
+    }
+
+    out.data = content.data;
+  }
+
+  return out;
+}